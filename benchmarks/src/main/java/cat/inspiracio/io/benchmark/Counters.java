@@ -0,0 +1,46 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Counts rows and bytes, so that JMH reports them per second. */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class Counters{
+
+	/** Rows read or written. */
+	public long rows;
+
+	/** Bytes of CSV in UTF-8 read or written. */
+	public long bytes;
+
+	@Setup(Level.Iteration) public void reset(){
+		rows=0;
+		bytes=0;
+	}
+
+	/** Counts one dataset. */
+	void add(int rows, long bytes){
+		this.rows+=rows;
+		this.bytes+=bytes;
+	}
+}
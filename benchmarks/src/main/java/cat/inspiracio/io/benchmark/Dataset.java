@@ -0,0 +1,108 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import cat.inspiracio.io.CSVWriter;
+import cat.inspiracio.io.Quoting;
+
+/** Generated data to benchmark with. Always the same for the same number
+ * of rows. */
+public enum Dataset{
+
+	/** Five numeric columns. */
+	NARROW{
+		@Override Object[] record(Random random, int row){
+			return new Object[]{row, random.nextInt(1000000), random.nextInt(10000)/100.0, random.nextLong(), random.nextDouble()};
+		}
+	},
+
+	/** Fifty columns of integers, decimals, booleans and short text. */
+	WIDE{
+		@Override Object[] record(Random random, int row){
+			Object[] record=new Object[50];
+			for(int i=0; i<record.length; i++){
+				switch(i%4){
+				case 0: record[i]=random.nextInt(100000); break;
+				case 1: record[i]=random.nextInt(100000)/100.0; break;
+				case 2: record[i]=random.nextBoolean(); break;
+				default: record[i]=WORDS[random.nextInt(WORDS.length)];
+				}
+			}
+			return record;
+		}
+	},
+
+	/** Quoted fields with escaped quotes, separators and line breaks. */
+	QUOTED{
+		@Override Object[] record(Random random, int row){
+			return new Object[]{
+				row,
+				"say \"" + WORDS[random.nextInt(WORDS.length)] + "\", then go",
+				WORDS[random.nextInt(WORDS.length)] + ",\n" + WORDS[random.nextInt(WORDS.length)],
+				"\"\"",
+				random.nextInt(1000)
+			};
+		}
+	},
+
+	/** Few columns of long text. */
+	TEXT{
+		@Override Object[] record(Random random, int row){
+			return new Object[]{row, text(random, 40), text(random, 120)};
+		}
+	};
+
+	private static final String[] WORDS={"alpha", "beta", "gamma", "delta", "Gr\u00fc\u00dfe", "caf\u00e9", "EUR", "USD", "null", "true"};
+
+	/** One record of the dataset. */
+	abstract Object[] record(Random random, int row);
+
+	/** The records of the dataset. */
+	public Object[][] records(int rows){
+		Random random=new Random(rows);
+		Object[][] records=new Object[rows][];
+		for(int i=0; i<rows; i++)
+			records[i]=record(random, i);
+		return records;
+	}
+
+	/** The dataset as CSV, with minimal quoting. */
+	public String csv(int rows)throws IOException{
+		StringWriter out=new StringWriter();
+		CSVWriter writer=new CSVWriter(out);
+		writer.setQuoting(Quoting.MINIMAL);
+		writer.setFlushRecords(0);
+		for(Object[] record : records(rows))
+			writer.writeln(record);
+		writer.close();
+		return out.toString();
+	}
+
+	/** Some words. */
+	private static String text(Random random, int words){
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<words; i++){
+			if(0<i)builder.append(' ');
+			builder.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return builder.toString();
+	}
+}
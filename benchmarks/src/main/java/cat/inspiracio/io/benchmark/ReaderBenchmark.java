@@ -0,0 +1,103 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cat.inspiracio.io.CSVReader;
+import cat.inspiracio.io.CSVRecord;
+import cat.inspiracio.io.ColumnType;
+import cat.inspiracio.io.SchemaInference;
+
+/** Reads a dataset from memory: guessing the types of the fields with
+ * readln(), with a schema with next(), and only the text with next()
+ * and get(). */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@State(Scope.Benchmark)
+public class ReaderBenchmark{
+
+	@Param({"NARROW", "WIDE", "QUOTED", "TEXT"})
+	public Dataset dataset;
+
+	@Param({"100000"})
+	public int rows;
+
+	private String csv;
+
+	/** Size of the CSV in UTF-8. */
+	private long bytes;
+
+	/** Inferred from the dataset. */
+	private ColumnType[] schema;
+
+	@Setup public void setup()throws IOException{
+		csv=dataset.csv(rows);
+		bytes=csv.getBytes(StandardCharsets.UTF_8).length;
+		SchemaInference inference=new SchemaInference();
+		inference.setReservoir(true);
+		schema=inference.infer(new CSVReader(new StringReader(csv)));
+	}
+
+	/** Guesses the type of every field. */
+	@Benchmark public void readln(Counters counters, Blackhole hole)throws IOException{
+		CSVReader reader=new CSVReader(new StringReader(csv));
+		Object[] record;
+		while((record=reader.readln())!=null)
+			hole.consume(record);
+		counters.add(rows, bytes);
+	}
+
+	/** Interprets the fields according to the schema, without boxing. */
+	@Benchmark public void typed(Counters counters, Blackhole hole)throws IOException{
+		CSVReader reader=new CSVReader(new StringReader(csv));
+		reader.setSchema(schema);
+		CSVRecord record;
+		while((record=reader.next())!=null)
+			hole.consume(record.isNull(0));
+		counters.add(rows, bytes);
+	}
+
+	/** Only looks at the text of the fields. */
+	@Benchmark public void text(Counters counters, Blackhole hole)throws IOException{
+		CSVReader reader=new CSVReader(new StringReader(csv));
+		CSVRecord record;
+		while((record=reader.next())!=null)
+			for(int i=0; i<record.size(); i++)
+				hole.consume(record.get(i).length());
+		counters.add(rows, bytes);
+	}
+}
@@ -0,0 +1,82 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io.benchmark;
+
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cat.inspiracio.io.CSVReader;
+import cat.inspiracio.io.CSVWriter;
+import cat.inspiracio.io.Quoting;
+
+/** Writes a dataset into memory and reads it back with readln(). */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark{
+
+	@Param({"NARROW", "WIDE", "QUOTED", "TEXT"})
+	public Dataset dataset;
+
+	@Param({"100000"})
+	public int rows;
+
+	private Object[][] records;
+
+	/** Size of the CSV in UTF-8, with minimal quoting. */
+	private long bytes;
+
+	@Setup public void setup()throws IOException{
+		records=dataset.records(rows);
+		bytes=dataset.csv(rows).getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	@Benchmark public void roundTrip(Counters counters, Blackhole hole)throws IOException{
+		CharArrayWriter out=new CharArrayWriter();
+		CSVWriter writer=new CSVWriter(out);
+		writer.setQuoting(Quoting.MINIMAL);
+		writer.setFlushRecords(0);
+		for(Object[] record : records)
+			writer.writeln(record);
+		writer.close();
+
+		CSVReader reader=new CSVReader(new CharArrayReader(out.toCharArray()));
+		Object[] record;
+		while((record=reader.readln())!=null)
+			hole.consume(record);
+		counters.add(rows, bytes);
+	}
+}
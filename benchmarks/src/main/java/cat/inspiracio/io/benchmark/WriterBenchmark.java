@@ -0,0 +1,126 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cat.inspiracio.io.CSVWriter;
+import cat.inspiracio.io.Quoting;
+
+/** Writes a dataset to a sink that discards it, or to a file,
+ * flushing after every record (as CSVWriter always used to) or only
+ * on close. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@State(Scope.Benchmark)
+public class WriterBenchmark{
+
+	@Param({"NARROW", "WIDE", "QUOTED", "TEXT"})
+	public Dataset dataset;
+
+	@Param({"100000"})
+	public int rows;
+
+	@Param({"NULL", "FILE"})
+	public String sink;
+
+	/** Flush after so many records, or 0 for only on close. */
+	@Param({"0", "1"})
+	public int flushRecords;
+
+	private Object[][] records;
+
+	/** Size of the CSV in UTF-8, with minimal quoting. */
+	private long bytes;
+
+	private File file;
+
+	@Setup public void setup()throws IOException{
+		records=dataset.records(rows);
+		bytes=dataset.csv(rows).getBytes(StandardCharsets.UTF_8).length;
+		file=File.createTempFile("benchmark", ".csv");
+	}
+
+	@TearDown public void tearDown(){file.delete();}
+
+	@Benchmark public void writeln(Counters counters)throws IOException{
+		CSVWriter writer=writer();
+		for(Object[] record : records)
+			writer.writeln(record);
+		writer.close();
+		counters.add(rows, bytes);
+	}
+
+	/** Writes numbers and booleans with the typed write methods. */
+	@Benchmark public void typed(Counters counters)throws IOException{
+		CSVWriter writer=writer();
+		for(Object[] record : records){
+			for(Object field : record){
+				if(field instanceof Integer)
+					writer.writeInt((Integer)field);
+				else if(field instanceof Long)
+					writer.writeLong((Long)field);
+				else if(field instanceof Double)
+					writer.writeDouble((Double)field);
+				else if(field instanceof Boolean)
+					writer.writeBoolean((Boolean)field);
+				else
+					writer.writeString((String)field);
+			}
+			writer.endRecord();
+		}
+		writer.close();
+		counters.add(rows, bytes);
+	}
+
+	private CSVWriter writer()throws IOException{
+		Writer out= "FILE".equals(sink) ? new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8) : new NullWriter();
+		CSVWriter writer=new CSVWriter(out);
+		writer.setQuoting(Quoting.MINIMAL);
+		writer.setFlushRecords(flushRecords);
+		return writer;
+	}
+
+	/** Discards everything. */
+	static class NullWriter extends Writer{
+		@Override public void write(char[] cbuf, int off, int len){}
+		@Override public void flush(){}
+		@Override public void close(){}
+	}
+}
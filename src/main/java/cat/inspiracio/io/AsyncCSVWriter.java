@@ -0,0 +1,232 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** Writes CSV records in a background thread, so that the callers of
+ * writeln() do not wait for I/O.
+ * <p>
+ * writeln() puts the record in a bounded lock-free queue. One writer
+ * thread takes the records from the queue and writes them with a CSVWriter,
+ * so the output is exactly that of the CSVWriter. It flushes the CSVWriter
+ * when the queue is empty or after a batch of records: many records share
+ * one flush (group commit).
+ * <p>
+ * When the queue is full, writeln() blocks, drops the record, or fails,
+ * according to the Backpressure policy.
+ * <p>
+ * Threadsafe: many threads may call writeln(). The records of one thread
+ * are written in order. close() writes all the records in the queue
+ * and closes the CSVWriter; records written during close() may be lost.
+ * The writer thread is a daemon, so records are lost if close() is never
+ * called. */
+public class AsyncCSVWriter implements Closeable, Flushable{
+
+	// Constants ----------------------------------------------
+
+	/** Flush at least after this many records. */
+	private static final int BATCH=1024;
+
+	/** How long a blocked caller waits before looking again. */
+	private static final long PAUSE=TimeUnit.MICROSECONDS.toNanos(100);
+
+	// State ----------------------------------------------
+
+	/** Writes the records. Only used by the writer thread. */
+	private final CSVWriter csv;
+
+	private final int capacity;
+
+	private final Backpressure backpressure;
+
+	/** Records waiting to be written. */
+	private final ConcurrentLinkedQueue<Object[]> queue=new ConcurrentLinkedQueue<Object[]>();
+
+	/** Number of records in the queue, or about to be put there. Never more than capacity. */
+	private final AtomicInteger size=new AtomicInteger();
+
+	/** Number of records put in the queue. */
+	private final AtomicLong submitted=new AtomicLong();
+
+	/** Number of records dropped because the queue was full. */
+	private final AtomicLong dropped=new AtomicLong();
+
+	/** Number of records written by the writer thread. */
+	private volatile long written=0;
+
+	/** Number of records written at the last flush. */
+	private volatile long flushed=0;
+
+	/** Is the writer thread waiting for records? */
+	private volatile boolean waiting=false;
+
+	private volatile boolean closed=false;
+
+	/** Why the writer thread has failed, or null.
+	 * Not only IOException: the underlying writer may throw anything. */
+	private volatile Throwable failure;
+
+	private final Thread thread;
+
+	// Constructors ----------------------------------------------
+
+	/** Starts a writer thread.
+	 * @param csv Writes the records. Only the writer thread will use it.
+	 * 	Its flush policy is replaced by group commit.
+	 * @param capacity Maximal number of records in the queue
+	 * @param backpressure What to do when the queue is full */
+	public AsyncCSVWriter(CSVWriter csv, int capacity, Backpressure backpressure){
+		if(capacity<1)
+			throw new IllegalArgumentException(capacity+"");
+		this.csv=csv;
+		this.capacity=capacity;
+		this.backpressure=backpressure;
+		csv.setFlushRecords(0);
+		csv.setFlushChars(0);
+		thread=new Thread(new Runnable(){
+			@Override public void run(){AsyncCSVWriter.this.run();}
+		}, "AsyncCSVWriter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Accessors ------------------------------------------
+
+	/** How many records have been dropped because the queue was full? */
+	public long getDropped(){return dropped.get();}
+
+	/** How many records have been written? */
+	public long getWritten(){return written;}
+
+	// Business methods ------------------------------------------
+
+	/** Puts a record in the queue, to be written as CSVWriter.writeln() does.
+	 * The array must not be changed afterwards.
+	 * @exception IllegalStateException The queue is full and the policy is
+	 * 	FAIL, or the writer is closed.
+	 * @exception IOException The writer thread has failed. */
+	public void writeln(Object... fields)throws IOException{
+		check();
+		while(true){
+			int n=size.get();
+			if(n<capacity){
+				if(size.compareAndSet(n, n+1))
+					break;
+				continue;
+			}
+			switch(backpressure){
+			case DROP:
+				dropped.incrementAndGet();
+				return;
+			case FAIL:
+				throw new IllegalStateException("Queue full");
+			default:
+				LockSupport.parkNanos(PAUSE);
+				check();
+			}
+		}
+		queue.offer(fields);
+		submitted.incrementAndGet();
+		if(waiting)
+			LockSupport.unpark(thread);
+	}
+
+	/** Waits until the records put in the queue so far have been written
+	 * and flushed. */
+	@Override public void flush()throws IOException{
+		long target=submitted.get();
+		while(flushed<target){
+			check();
+			if(waiting)
+				LockSupport.unpark(thread);
+			LockSupport.parkNanos(PAUSE);
+		}
+	}
+
+	/** Writes the records in the queue, and closes the CSVWriter. */
+	@Override public void close()throws IOException{
+		if(!closed){
+			closed=true;
+			LockSupport.unpark(thread);
+			try{
+				thread.join();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+		if(failure!=null)
+			throw new IOException(failure);
+	}
+
+	// Helpers ---------------------------------------------------------------
+
+	/** Throws if the writer thread has failed or the writer is closed. */
+	private void check()throws IOException{
+		if(failure!=null)
+			throw new IOException(failure);
+		if(closed)
+			throw new IllegalStateException("Closed");
+	}
+
+	/** The writer thread */
+	private void run(){
+		try{
+			int batch=0;
+			while(true){
+				Object[] record=queue.poll();
+				if(record==null || batch==BATCH){
+					//group commit
+					if(written!=flushed){
+						csv.flush();
+						flushed=written;
+					}
+					batch=0;
+				}
+				if(record!=null){
+					size.decrementAndGet();
+					csv.writeln(record);
+					written++;
+					batch++;
+					continue;
+				}
+				if(closed && queue.isEmpty())
+					break;
+				waiting=true;
+				if(queue.isEmpty() && !closed)
+					LockSupport.park(this);
+				waiting=false;
+			}
+			csv.close();
+		}catch(Throwable e){
+			//Any failure, so that flush(), writeln(), and close() do not wait for a dead thread.
+			failure=e;
+		}finally{
+			if(failure!=null)
+				queue.clear();
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+/** What AsyncCSVWriter does with a record when its queue is full. */
+public enum Backpressure{
+
+	/** Wait until there is space in the queue. */
+	BLOCK,
+
+	/** Discard the record, and count it. */
+	DROP,
+
+	/** Throw IllegalStateException. */
+	FAIL
+}
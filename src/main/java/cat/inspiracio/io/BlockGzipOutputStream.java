@@ -0,0 +1,169 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/** Compresses into gzip blocks (BGZF), so that the output can be
+ * decompressed in parallel by GzipReader.
+ * <p>
+ * The output is a sequence of gzip members of at most 64 KiB each. Every
+ * member says how long it is, in an extra field "BC" of its header. Any
+ * gzip tool can decompress the output, as it is plain multi-member gzip.
+ * The output ends with an empty block.
+ * <p>
+ * flush() does not end the current block, because small blocks compress
+ * badly: it only flushes the underlying stream. So for CSVWriter, choose a
+ * flush policy with setFlushRecords(0), or a large setFlushChars().
+ * Example:
+ * <pre>
+ * OutputStream out=new BlockGzipOutputStream(new FileOutputStream(file))
+ * CSVWriter csv=new CSVWriter(new OutputStreamWriter(out, UTF_8))
+ * csv.setFlushRecords(0)
+ * </pre> */
+public class BlockGzipOutputStream extends FilterOutputStream{
+
+	// Constants ----------------------------------------------
+
+	/** Uncompressed bytes per block, so that a compressed block
+	 * surely fits into 64 KiB. */
+	static final int BLOCK=0xff00;
+
+	/** Bytes in the header of a block. */
+	static final int HEADER=18;
+
+	/** Bytes in the trailer of a block: CRC and size. */
+	static final int TRAILER=8;
+
+	// State ----------------------------------------------
+
+	private final byte[] buffer=new byte[BLOCK];
+
+	/** Number of bytes in the buffer. */
+	private int count=0;
+
+	private final byte[] block=new byte[0x10000];
+
+	private final Deflater deflater;
+
+	private final CRC32 crc=new CRC32();
+
+	private boolean closed=false;
+
+	// Constructors ----------------------------------------------
+
+	/** Compresses with the default level. */
+	public BlockGzipOutputStream(OutputStream out){this(out, Deflater.DEFAULT_COMPRESSION);}
+
+	/** @param level compression level of Deflater, 0 to 9 */
+	public BlockGzipOutputStream(OutputStream out, int level){
+		super(out);
+		deflater=new Deflater(level, true);
+	}
+
+	// Business methods ------------------------------------------
+
+	@Override public void write(int b)throws IOException{
+		if(count==BLOCK)
+			block();
+		buffer[count++]=(byte)b;
+	}
+
+	@Override public void write(byte[] b, int off, int len)throws IOException{
+		while(0<len){
+			if(count==BLOCK)
+				block();
+			int n=Math.min(len, BLOCK-count);
+			System.arraycopy(b, off, buffer, count, n);
+			count+=n;
+			off+=n;
+			len-=n;
+		}
+	}
+
+	/** Flushes the underlying stream, without ending the current block. */
+	@Override public void flush()throws IOException{out.flush();}
+
+	/** Writes the last block and the empty block, and closes the underlying stream. */
+	@Override public void close()throws IOException{
+		if(closed)
+			return;
+		closed=true;
+		try{
+			if(0<count)
+				block();
+			block();//empty block marks the end
+			out.flush();
+		}finally{
+			deflater.end();
+			out.close();
+		}
+	}
+
+	// Helpers --------------------------------------------
+
+	/** Compresses the buffer into one block and writes it. */
+	private void block()throws IOException{
+		deflater.reset();
+		deflater.setInput(buffer, 0, count);
+		deflater.finish();
+		int length=HEADER;
+		while(!deflater.finished()){
+			if(length==block.length-TRAILER)
+				throw new IOException("Block too large");//cannot happen for BLOCK bytes
+			length+=deflater.deflate(block, length, block.length-TRAILER-length);
+		}
+		crc.reset();
+		crc.update(buffer, 0, count);
+		int size=length+TRAILER;
+
+		//header with extra field BC: total block size - 1
+		block[0]=0x1f;
+		block[1]=(byte)0x8b;
+		block[2]=8;//deflate
+		block[3]=4;//FEXTRA
+		block[4]=block[5]=block[6]=block[7]=0;//MTIME
+		block[8]=0;//XFL
+		block[9]=(byte)0xff;//OS unknown
+		block[10]=6;//XLEN
+		block[11]=0;
+		block[12]='B';
+		block[13]='C';
+		block[14]=2;//SLEN
+		block[15]=0;
+		block[16]=(byte)(size-1);
+		block[17]=(byte)((size-1)>>8);
+
+		//trailer
+		intLE(block, length, (int)crc.getValue());
+		intLE(block, length+4, count);
+		out.write(block, 0, size);
+		count=0;
+	}
+
+	/** Writes an int in little-endian. */
+	private static void intLE(byte[] b, int i, int n){
+		b[i]=(byte)n;
+		b[i+1]=(byte)(n>>8);
+		b[i+2]=(byte)(n>>16);
+		b[i+3]=(byte)(n>>24);
+	}
+}
@@ -17,14 +17,11 @@ limitations under the License.
 package cat.inspiracio.io;
 
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
-import java.text.NumberFormat;
-import java.text.ParsePosition;
-import java.util.ArrayList;
-import java.util.Locale;
-
-import cat.inspiracio.text.NumberFormatWrapper;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /** Reads CSV records from a java.io.Reader, one at a time.
  * Can be used to read the records and process them without having to read
@@ -40,6 +37,43 @@ import cat.inspiracio.text.NumberFormatWrapper;
  *  line=csv.readln()
  * }
  * </pre>
+ * If the types of the columns are known, declare them and read
+ * the records with next(), without guessing types and without boxing:
+ * <pre>
+ * CSVReader csv=new CSVReader(reader)
+ * csv.setSchema(STRING, INT, SKIP, DOUBLE)
+ * CSVRecord record=csv.next()
+ * while(record!=null){
+ *  process(record.getString(0), record.getInt(1), record.getDouble(3))
+ *  record=csv.next()
+ * }
+ * </pre>
+ * To only look at the text of some fields, read the records with next()
+ * and the fields with CSVRecord.get(). That allocates nothing per record.
+ * <p>
+ * If the first record has the names of the columns, use header mode,
+ * and get the fields by name:
+ * <pre>
+ * csv.setHeader(true)
+ * CSVRecord record=csv.next()
+ * process(record.getString("name"))
+ * </pre>
+ * <p>
+ * If only some columns are needed, say so with setColumns(). The other
+ * fields are only scanned for their ends: not unescaped, not parsed.
+ * <p>
+ * To read only some records, add filters on columns with addFilter().
+ * As soon as a field fails a filter, the rest of the record is only scanned
+ * for its end.
+ * <p>
+ * The records are also available as a stream. A parallel stream parses
+ * batches of records in other threads:
+ * <pre>
+ * new CSVReader(reader).stream().parallel().filter(...).forEach(...)
+ * </pre>
+ * To read a gzip file, decompressing in other threads, use a GzipReader:
+ * new CSVReader(new GzipReader(file)).
+ * <p>
  * When interpreting numbers, Locale.US is assumed.
  * */
 public class CSVReader{
@@ -53,58 +87,102 @@ public class CSVReader{
 	/** Separates fields. Can be ',' or ';' or ':' or TAB or SPACE. */
 	private char separator=',';
 
-	/** Detects integers.
-	 * 
-	 * Internationalised: numbers according to US locale.
-	 * Prefers Integer over Long. 
-	 * NumberFormat is not threadsafe. */
-	private NumberFormat integers=new NumberFormatWrapper(NumberFormat.getIntegerInstance(Locale.US)){
-
-		/** Return Integer if possible rather than Long. */
-		@Override public Number parse(String source, ParsePosition position) {
-			Number number=super.parse(source, position);
-			if(number==null)
-				return null;
-			long n=number.longValue();
-			if(Integer.MIN_VALUE <= n && n <= Integer.MAX_VALUE)
-				return Integer.valueOf(number.intValue());
-			return number;
-		}
-	};
-
-	/** Detects floating point numbers.
-	 * 
-	 * Internationalised: numbers according to US locale.
-	 * Prefers Integer over Long.
-	 * NumberFormat is not threadsafe. */
-	private NumberFormat numbers=new NumberFormatWrapper(NumberFormat.getNumberInstance(Locale.US)){
-
-		/** Return Integer if possible rather than Long. */
-		@Override public Number parse(String source, ParsePosition position) {
-			Number number=super.parse(source, position);
-			if(number==null)
-				return null;
-			long n=number.longValue();
-			if(number instanceof Long && Integer.MIN_VALUE <= n && n <= Integer.MAX_VALUE)
-				return Integer.valueOf(number.intValue());
-			return number;
-		}
-	};
+	/** Initial size of the buffer. It grows if a record does not fit. */
+	private static final int BUFFER_SIZE=64*1024;
 
+	/** Default capacity of the StringCache of a column. */
+	private static final int DEDUPLICATE=1024;
 
 	//State ------------------------------------------------
 
-	/** number of records already parsed and delivered in readln() */
+	/** number of records already parsed and delivered in readln() or next() */
 	private int count=0;
 
 	/** Parse the records from this reader. */
-	private PushbackReader reader;
+	private Reader reader;
+
+	/** Window of the input. The characters between position and limit
+	 * have been read from the reader but not yet parsed. */
+	private char[] buffer;
+
+	/** Index of the next character to parse in the buffer. */
+	private int position=0;
+
+	/** Index after the last valid character in the buffer. */
+	private int limit=0;
+
+	/** Index in the buffer of the start of the current record,
+	 * or -1. Refilling the buffer keeps the characters from mark on. */
+	private int mark=-1;
+
+	/** Number of fields of the current record. */
+	private int fields=0;
+
+	/** Where the fields of the current record start, relative to mark.
+	 * Delimited fields are unescaped in place. */
+	private int[] starts=new int[16];
+
+	/** Lengths of the fields of the current record. */
+	private int[] lengths=new int[16];
+
+	/** Interprets the fields. */
+	private final FieldParser parser=new FieldParser();
+
+	/** The reusable record returned by next(). */
+	private final CSVRecord record=new CSVRecord(parser);
+
+	/** Has the reader returned end of input? */
+	private boolean exhausted=false;
+
+	/** Strict: malformed input throws MalformedCSVException.
+	 * Lenient: malformed input ends the record. */
+	private boolean strict=false;
+
+	/** The columns that readln() returns, in order, or null for all. */
+	private int[] columns;
+
+	/** Which columns are scanned, by column index, or null for all. */
+	private boolean[] projection;
+
+	/** The filters of each column, by column index, or null. */
+	private FieldFilter[][] filters;
+
+	/** Collects counters and timings, or null. */
+	private Metrics metrics;
+
+	/** Has the reader told the metrics that it is finished? */
+	private boolean finished=false;
+
+	/** Chars read from the reader. */
+	private long chars=0;
+
+	/** Fields scanned, and of those, fields enclosed in delimiters. */
+	private long scanned=0;
+	private long quoted=0;
+
+	/** Records that have not passed the filters. */
+	private long filtered=0;
+
+	/** Header mode: is the first record the header? */
+	private boolean headed=false;
+
+	/** The column names, once read in header mode. */
+	private Header header;
 
 	//Constructor -----------------------------------------
 
 	/** @param reader An open reader of a CSV file */
 	public CSVReader(Reader reader){
-		this.reader=new PushbackReader(reader, 2);//two character pushback buffer for CRLF
+		this.reader=reader;
+		this.buffer=new char[BUFFER_SIZE];
+	}
+
+	/** Reads some text that is already in memory, without copying it.
+	 * @param text Belongs to the reader now. */
+	private CSVReader(char[] text){
+		this.buffer=text;
+		this.limit=text.length;
+		this.exhausted=true;
 	}
 
 	//Accessors -------------------------------------------
@@ -125,7 +203,131 @@ public class CSVReader{
 		this.separator=separator;
 	}
 
-	/** How many records have been read? */
+	/** Sets strict mode.
+	 * In strict mode, malformed input throws MalformedCSVException.
+	 * In lenient mode (the default), malformed input ends the record:
+	 * a delimited field without final delimiter is dropped, and characters
+	 * after the final delimiter of a field start the next record. */
+	public void setStrict(boolean strict){this.strict=strict;}
+
+	/** Declares the types of the columns for next().
+	 * Columns without declared type are STRING.
+	 * @param schema the type of each column, or nothing to forget the schema */
+	public void setSchema(ColumnType... schema){record.setSchema(schema);}
+
+	/** Sets header mode: the first record has the names of the columns.
+	 * It is read before the first record, and it is not returned as a record.
+	 * It is not counted either: getCount() and the record numbers of
+	 * MalformedCSVException count the records after it, and a malformed
+	 * header is record 0.
+	 * Call this before reading. */
+	public void setHeader(boolean header){this.headed=header;}
+
+	/** Gets the column names.
+	 * In header mode, reads the header if it has not been read yet.
+	 * @return the header, or null if not in header mode
+	 * @exception IOException Could not read the header. */
+	public Header getHeader()throws IOException{
+		if(headed && header==null)
+			readHeader();
+		return header;
+	}
+
+	/** Deduplicates the Strings of fields: a value that repeats in a column
+	 * is mostly the same String, instead of a new one every time.
+	 * That saves memory if the records are kept and there are columns with
+	 * few different values. Each column has a StringCache of 1024 values.
+	 * Columns with many different values soon stop caching. */
+	public void setDeduplicate(boolean deduplicate){
+		parser.setDeduplicate(deduplicate ? DEDUPLICATE : 0);
+	}
+
+	/** Deduplicates the Strings of fields, with a StringCache of this
+	 * capacity for each column, or not if the capacity is 0. */
+	public void setDeduplicate(int capacity){parser.setDeduplicate(capacity);}
+
+	/** The StringCache of a column, with its statistics,
+	 * or null if the reader does not deduplicate or has not yet made a
+	 * String for the column. */
+	public StringCache getCache(int column){return parser.getCache(column);}
+
+	/** Projects the records to some columns. readln() returns only these
+	 * columns, in this order, and null for a column that a record does not
+	 * have. In next(), the columns keep their index, and the columns that
+	 * are neither projected nor filtered are empty. The fields of other columns are only scanned for their ends.
+	 * @param columns indexes of columns, starting at 0, or nothing to read
+	 * 	all columns again */
+	public void setColumns(int... columns){
+		if(columns.length==0){
+			this.columns=null;
+			this.projection=null;
+			return;
+		}
+		int max=0;
+		for(int c : columns){
+			if(c<0)
+				throw new IllegalArgumentException(c+"");
+			max=Math.max(max, c);
+		}
+		boolean[] projection=new boolean[max+1];
+		for(int c : columns)
+			projection[c]=true;
+		this.columns=columns.clone();
+		this.projection=projection;
+	}
+
+	/** Projects the records to the columns with these names,
+	 * as setColumns(int...) does. Sets header mode.
+	 * @exception IllegalArgumentException There is no column with a name.
+	 * @exception IOException Could not read the header. */
+	public void setColumns(String... names)throws IOException{
+		int[] columns=new int[names.length];
+		for(int k=0; k<names.length; k++)
+			columns[k]=column(names[k]);
+		setColumns(columns);
+	}
+
+	/** Reads only the records whose field in this column passes the filter.
+	 * A record without this column does not pass. Several filters must all pass.
+	 * Filtering happens before projection, and does not change column indexes.
+	 * @param column index of the column, starting at 0 */
+	public void addFilter(int column, FieldFilter filter){
+		if(column<0)
+			throw new IllegalArgumentException(column+"");
+		if(filter==null)
+			throw new NullPointerException();
+		if(filters==null)
+			filters=new FieldFilter[0][];
+		if(filters.length<=column)
+			filters=Arrays.copyOf(filters, column+1);
+		FieldFilter[] old=filters[column];
+		if(old==null){
+			filters[column]=new FieldFilter[]{filter};
+			return;
+		}
+		filters[column]=Arrays.copyOf(old, old.length+1);
+		filters[column][old.length]=filter;
+	}
+
+	/** Adds a filter to the column with this name, as addFilter(int, FieldFilter)
+	 * does. Sets header mode.
+	 * @exception IllegalArgumentException There is no column with the name.
+	 * @exception IOException Could not read the header. */
+	public void addFilter(String name, FieldFilter filter)throws IOException{
+		addFilter(column(name), filter);
+	}
+
+	/** Removes all filters. */
+	public void removeFilters(){filters=null;}
+
+	/** Collects counters and timings in these metrics, or in none (the default).
+	 * The batches of a parallel stream are not counted. */
+	public void setMetrics(Metrics metrics){this.metrics=metrics;}
+
+	public Metrics getMetrics(){return metrics;}
+
+	/** How many records have been read, including records that
+	 * have not passed the filters? */
 	public int getCount(){return count;}
 
 	//Methods ---------------------------------------------
@@ -145,84 +347,456 @@ public class CSVReader{
 	 * @throws IOException
 	 * */
 	public Object[] readln() throws IOException{
-		
-		if(eof())return null;
+		if(headed && header==null)
+			readHeader();
+		long start= metrics!=null && metrics.sample() ? System.nanoTime() : 0;
+		if(!scan()){
+			finish();
+			return null;
+		}
+		Object[] record;
+		if(start!=0)
+			record=parseTimed();
+		else if(columns!=null)
+			record=project();
+		else{
+			record=new Object[fields];
+			for(int i=0; i<fields; i++)
+				record[i]=parser.parse(buffer, mark+starts[i], lengths[i], i);
+		}
+		if(metrics!=null)
+			publish(record, start);
+		return record;
+	}
 
-		//Read all the fields of one record
-		ArrayList<Object>record=new ArrayList<Object>();
+	/** Reads (parses) one more record from the CSV file into a reusable
+	 * record, interpreting the fields according to the schema.
+	 * <p>
+	 * The record is the same object for every call. It is valid until
+	 * the next call of next() or readln().
+	 * 
+	 * @return the record, or null if there are no more records
+	 * @throws MalformedCSVException A field does not have the declared
+	 * 	type and we are strict.
+	 * @throws IOException
+	 * */
+	public CSVRecord next() throws IOException{
+		if(headed && header==null)
+			readHeader();
+		long start= metrics!=null && metrics.sample() ? System.nanoTime() : 0;
+		if(!scan()){
+			finish();
+			return null;
+		}
+		record.set(buffer, mark, starts, lengths, fields);
+		if(strict){
+			try{
+				record.verify(count);
+			}catch(MalformedCSVException e){
+				if(metrics!=null)
+					metrics.malformed(e);
+				throw e;
+			}
+		}
+		if(metrics!=null)
+			publish(null, start);
+		return record;
+	}
+
+	/** Makes a stream of the records that readln() would return.
+	 * <p>
+	 * If the stream is parallel, it splits off batches of records:
+	 * this reader only finds where the records end and copies their text,
+	 * and other threads parse them. In strict mode, the record number of a
+	 * MalformedCSVException then counts from the start of the batch.
+	 * <p>
+	 * The stream consumes this reader. */
+	public Stream<Object[]> stream(){
 		try{
-			Object field=readField();
-			while(true){  //An EOR exception gets us out of the loop.
-				record.add(field);
-				String c=read(separator);//at the end of the record, returns null
-				if(c==null)
-					throw new EOR();
-				field=readField();
+			getHeader();
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+		return StreamSupport.stream(new RecordSpliterator(this), false);
+	}
+
+	//Package methods --------------------------------------
+
+	/** Reads the text of some records, without interpreting or unescaping them.
+	 * @param records the maximal number of records
+	 * @return the text of the records, or null at end of input */
+	char[] readText(int records)throws IOException{
+		mark=-1;//forget the previous record
+		if(eof())
+			return null;
+		mark=position;
+		for(int i=0; i<records && skip(); i++);
+		char[] text=Arrays.copyOfRange(buffer, mark, position);
+		mark=-1;
+		return text;
+	}
+
+	/** The projected columns, in the order of readln(), or null for all. */
+	int[] getColumns(){return columns;}
+
+	/** The names of the columns that readln() returns, or null if not
+	 * in header mode. */
+	Header getProjectedHeader()throws IOException{
+		Header header=getHeader();
+		if(header==null || columns==null)
+			return header;
+		String[] names=new String[columns.length];
+		for(int k=0; k<columns.length; k++)
+			names[k]= columns[k]<header.size() ? header.getName(columns[k]) : "";
+		return new Header(names);
+	}
+
+	/** Skips one record, without interpreting it or applying filters.
+	 * @return false at end of input */
+	boolean skipRecord()throws IOException{
+		mark=-1;//forget the previous record
+		return skip();
+	}
+
+	/** Makes a reader with the same configuration for some text. */
+	CSVReader reader(char[] text){
+		CSVReader reader=new CSVReader(text);
+		reader.delimiter=delimiter;
+		reader.separator=separator;
+		reader.strict=strict;
+		reader.columns=columns;
+		reader.projection=projection;
+		reader.filters=filters;
+		reader.parser.setDeduplicate(parser.getDeduplicate());
+		return reader;
+	}
+
+	//Helpers ----------------------------------------------
+
+	/** Scans the next record that passes the filters into the buffer: after
+	 * this, the fields are at mark+starts[i] with lengths[i], already unescaped.
+	 * <p>
+	 * Should be called when the position is just before a record or
+	 * at the end of input. Leaves the position just before the next record
+	 * or at the end of input.
+	 * @return false at end of input */
+	private boolean scan()throws IOException{
+		while(true){
+			mark=-1;//forget the previous record
+			if(eof())
+				return false;
+
+			//Scan all the fields of one record
+			mark=position;
+			fields=0;
+			boolean accepted=true;
+			do{
+				if(!(wanted(fields) ? scanField() : skipped()))
+					break;
+				if(filters!=null && !accept(fields-1)){
+					accepted=false;
+					skipRest();
+					break;
+				}
+			}while(read(separator));//at the end of the record, there is no separator
+			if(filters!=null && fields<filters.length)
+				accepted=false;//some filtered column is missing
+
+			//Maybe read trailing line terminator
+			if(readRecordSeparator()==null && !eof())
+				bad("Expected separator or end of line");
+
+			count++;
+			if(metrics!=null)
+				tally(accepted);
+			if(accepted)
+				return true;
+		}
+	}
+
+	/** Counts the fields of the record that has just been scanned, for the
+	 * metrics, so that reading without metrics does not count anything.
+	 * A field is delimited if its start is just after a delimiter: otherwise
+	 * it is at the start of the record or after a separator. Fields that are
+	 * not projected are not counted as delimited. */
+	private void tally(boolean accepted){
+		scanned+=fields;
+		for(int i=0; i<fields; i++){
+			int start=starts[i];
+			if(0<start && buffer[mark+start-1]==delimiter)
+				quoted++;
+		}
+		if(!accepted)
+			filtered++;
+	}
+
+	/** Does the field pass the filters of its column? */
+	private boolean accept(int column){
+		if(filters.length<=column || filters[column]==null)
+			return true;
+		for(FieldFilter filter : filters[column])
+			if(!filter.accept(buffer, mark+starts[column], lengths[column]))
+				return false;
+		return true;
+	}
+
+	/** Skips the rest of a record that has failed a filter,
+	 * up to the record separator. */
+	private void skipRest()throws IOException{
+		while(read(separator)){
+			if(!skipField()){
+				bad("Missing final delimiter");
+				return;
 			}
 		}
-		catch(EOR e){}//Have reached the end of record.
+	}
+
+	/** Updates the metrics after a record.
+	 * @param values the record from readln(), to count the types, or null
+	 * @param start when the record was started, if it is timed, or 0 */
+	private void publish(Object[] values, long start){
+		if(values!=null){
+			int strings=0, integers=0, decimals=0, booleans=0, nulls=0;
+			for(Object value : values){
+				if(value==null)nulls++;
+				else if(value instanceof String)strings++;
+				else if(value instanceof Integer || value instanceof Long)integers++;
+				else if(value instanceof Boolean)booleans++;
+				else decimals++;
+			}
+			if(0<strings)metrics.add(Counter.STRINGS, strings);
+			if(0<integers)metrics.add(Counter.INTEGERS, integers);
+			if(0<decimals)metrics.add(Counter.DECIMALS, decimals);
+			if(0<booleans)metrics.add(Counter.BOOLEANS, booleans);
+			if(0<nulls)metrics.add(Counter.NULLS, nulls);
+		}
+		metrics.set(Counter.RECORDS, count);
+		metrics.set(Counter.FIELDS, scanned);
+		metrics.set(Counter.CHARS, chars);
+		metrics.set(Counter.QUOTED_FIELDS, quoted);
+		metrics.set(Counter.FILTERED, filtered);
+		if(start!=0)
+			metrics.record(System.nanoTime()-start);
+	}
+
+	/** At the end of input, tells the metrics. */
+	private void finish(){
+		if(metrics==null || finished)
+			return;
+		finished=true;
+		publish(null, 0);
+		metrics.finished();
+	}
+
+	/** Reads the header, the whole record and unfiltered. */
+	private void readHeader()throws IOException{
+		int[] columns=this.columns;
+		boolean[] projection=this.projection;
+		FieldFilter[][] filters=this.filters;
+		this.columns=null;
+		this.projection=null;
+		this.filters=null;
+		String[] names=new String[0];
+		if(scan()){
+			count--;//the header is not a record
+			names=new String[fields];
+			for(int i=0; i<fields; i++)
+				names[i]=field(i);
+		}
+		this.columns=columns;
+		this.projection=projection;
+		this.filters=filters;
+		header=new Header(names);
+		record.setHeader(header);
+	}
+
+	/** The index of the column with this name. Sets header mode. */
+	private int column(String name)throws IOException{
+		headed=true;
+		int column=getHeader().indexOf(name);
+		if(column<0)
+			throw new IllegalArgumentException(name);
+		return column;
+	}
+
+	/** The projected fields of the current record, interpreted. */
+	private Object[] project(){
+		Object[] record=new Object[columns.length];
+		for(int k=0; k<columns.length; k++){
+			int c=columns[k];
+			if(c<fields)
+				record[k]=parser.parse(buffer, mark+starts[c], lengths[c], c);
+		}
+		return record;
+	}
+
+	/** Interprets the fields of the current record as readln() does,
+	 * timing each field by the type that it turns out to have. */
+	private Object[] parseTimed(){
+		int n= columns!=null ? columns.length : fields;
+		Object[] record=new Object[n];
+		for(int k=0; k<n; k++){
+			int c= columns!=null ? columns[k] : k;
+			if(fields<=c)
+				continue;
+			long start=System.nanoTime();
+			Object value=parser.parse(buffer, mark+starts[c], lengths[c], c);
+			metrics.parse(value, System.nanoTime()-start);
+			record[k]=value;
+		}
+		return record;
+	}
+
+	/** Is the column projected or filtered? */
+	private boolean wanted(int column){
+		return projection==null || column<projection.length && projection[column]
+			|| filters!=null && column<filters.length && filters[column]!=null;
+	}
+
+	/** Skips a field that is not projected, noting it as empty.
+	 * @return false if the field is bad and we are lenient
+	 * @exception MalformedCSVException The field is bad and we are strict. */
+	private boolean skipped()throws IOException{
+		int start=position-mark;
+		if(!skipField()){
+			bad("Missing final delimiter");
+			return false;
+		}
+		field(start, 0);
+		return true;
+	}
 
-		readRecordSeparator();//Maybe read trailing line terminator
+	/** The text of a field of the current record. */
+	private String field(int i){
+		return new String(buffer, mark+starts[i], lengths[i]);
+	}
 
+	/** Skips one record, with the same grammar as scan(),
+	 * but without interpreting or unescaping the fields.
+	 * @return false at end of input */
+	private boolean skip()throws IOException{
+		if(eof())
+			return false;
+		do{
+			if(!skipField())
+				break;
+		}while(read(separator));
+		readRecordSeparator();
 		count++;
-		return record.toArray();
+		return true;
 	}
 
-	//Helpers ----------------------------------------------
+	/** Skips one field, with the same grammar as scanField().
+	 * @return false if the field is bad */
+	private boolean skipField()throws IOException{
+		if(!delimiter()){
+			while(true){
+				if(position==limit && !fill())
+					return true;
+				char c=buffer[position];
+				if(c==separator || c=='\r' || c=='\n')
+					return true;
+				position++;
+			}
+		}
+		read(delimiter);
+		while(true){
+			if(position==limit && !fill())
+				return false;
+			if(buffer[position++]!=delimiter)
+				continue;
+			if(peek()!=delimiter)
+				return true;//past the final delimiter
+			position++;
+		}
+	}
+
+	/** Reads more input into the buffer.
+	 * <p>
+	 * Should only be called when all characters in the buffer have been parsed.
+	 * Discards the parsed characters, except for those from mark on,
+	 * and grows the buffer if they fill all of it.
+	 * @return false at end of input */
+	private boolean fill()throws IOException{
+		if(exhausted)
+			return false;
+		int from= 0<=mark ? mark : position;
+		if(0<from){
+			System.arraycopy(buffer, from, buffer, 0, limit-from);
+			limit-=from;
+			position-=from;
+			if(0<=mark)mark=0;
+		}
+		if(limit==buffer.length)
+			buffer=Arrays.copyOf(buffer, 2*buffer.length);
+		int n=reader.read(buffer, limit, buffer.length-limit);
+		while(n==0)
+			n=reader.read(buffer, limit, buffer.length-limit);
+		if(n<0){
+			exhausted=true;
+			return false;
+		}
+		limit+=n;
+		if(metrics!=null)
+			chars+=n;
+		return true;
+	}
+
+	/** Returns the next character without consuming it, or -1 at end of input. */
+	private int peek()throws IOException{
+		if(position==limit && !fill())
+			return -1;
+		return buffer[position];
+	}
 
 	/** Are we at the end of input? */
 	private boolean eof()throws IOException{
-		int i=reader.read();
-		if(i<0)
-			return true;//end of input
-		reader.unread(i);
-		return false;
+		return position==limit && !fill();
+	}
+
+	/** Notes one more field of the current record.
+	 * @param start relative to mark */
+	private void field(int start, int length){
+		if(fields==starts.length){
+			starts=Arrays.copyOf(starts, 2*fields);
+			lengths=Arrays.copyOf(lengths, 2*fields);
+		}
+		starts[fields]=start;
+		lengths[fields]=length;
+		fields++;
 	}
 	
-	/** Reads one field.
+	/** Scans one field.
 	 * <p>
 	 * The position should be just before a field and is left
-	 * just after the field. The field returned my be just "".
-	 * <p>
-	 * If the method could not read a field, it sets the read position
-	 * to where it was and returns null.
-	 * @return the field, represented in Java
-	 * @exception EOR
+	 * just after the field. The field may be just "".
+	 * @return false if the field is bad and we are lenient
+	 * @exception MalformedCSVException The field is bad and we are strict.
 	 * */
-	private Object readField()throws IOException, EOR{
-		
-		//End of input? Return "" at least".
-		if(eof())
-			return "";
+	private boolean scanField()throws IOException{
 
 		//Is the field delimited?
 		if(delimiter())
-			return readDelimitedField();
+			return scanDelimitedField();
 		
 		//The field is not delimited. Field may be 0 chars.
-		int i=reader.read();
-		StringBuilder builder=new StringBuilder();
-		while(terminatesField(i)){  
-			char c=(char)i;
-			builder.append(c);
-			i=reader.read();
+		int start=position-mark;
+		while(true){
+			if(position==limit && !fill())
+				break;
+			char c=buffer[position];
+			if(c==separator || c=='\r' || c=='\n')
+				break;
+			position++;
 		}
-		if(0<=i)reader.unread(i);
-		String field=builder.toString();
-		return parseField(field);
+		field(start, position-mark-start);
+		return true;
 	}
 
-	private boolean terminatesField(int i){
-		return 0<=i && i!=separator && i!='\r' && i!='\n';
-	}
-	
 	/** Does input start with delimiter?
 	 * In either case, leaves position unchanged. */
 	private boolean delimiter()throws IOException{
-		int i=reader.read();
-		if(0<=i)
-			reader.unread(i);
-		return i==delimiter;
+		return peek()==delimiter;
 	}
 	
 	/** Reads the record separator.
@@ -236,147 +810,96 @@ public class CSVReader{
 	private String readRecordSeparator()throws IOException{
 		
 		//try LF
-		if(read('\n')!=null)
+		if(read('\n'))
 			return "\n";		
 
-		//try CRLF
-		if(read("\r\n")!=null)
-			return "\r\n";		
-
-		//try CR
-		if(read('\r')!=null)
-			return "\r";		
+		//try CRLF or CR
+		if(read('\r')){
+			if(read('\n'))
+				return "\r\n";
+			return "\r";
+		}
 		
 		return null;//found no record separator
 	}
 
-	/** Reads a certain character and returns it.
-	 * If the reader does not start with that character, returns null and leaves position unchanged.
+	/** Reads a certain character.
+	 * If the reader does not start with that character, returns false and leaves position unchanged.
 	 * @throws IOException 
 	 * */
-	private String read(char c) throws IOException{
-		int i=reader.read();
-		if(i==c)
-			return c+"";//found it!
-		if(0<=i)
-			reader.unread(i);//something else, unread. Don't unread EOF.
-		return null;
+	private boolean read(char c) throws IOException{
+		if(peek()!=c)
+			return false;
+		position++;
+		return true;
 	}
 
-	/** Reads some certain characters and returns them.
-	 * If the reader does not start with those characters, returns null and leaves position unchanged.
-	 * @throws IOException 
-	 * */
-	private String read(String s)throws IOException{
-		//Implemented only for two characters.
-		if(s.length()!=2)
-			throw new IllegalArgumentException(s);
-		char c=s.charAt(0);
-		char d=s.charAt(1);
-		int i=reader.read();
-		if(i==c){
-			int j=reader.read();
-			if(j==d)
-				return s;
-			if(0<=j)
-				reader.unread(j);
-		}
-		if(0<=i)
-			reader.unread(i);
-		return null;
-	}
-	
-	/** Reads a delimited field from the CSV and returns it as
-	 * Boolean, Number, or String.
+	/** Scans a delimited field.
 	 * <p>
 	 * The position should be just before the first field delimiter
 	 * and is left just after the second field delimiter.
-	 * @exception EOR If the method cannot read a field, it throws EOR and leaves the
-	 * position where it was.
+	 * <p>
+	 * Escaped delimiters are unescaped in place in the buffer, moving runs
+	 * of characters in bulk, so that the field is never copied.
+	 * @return false if there is no final delimiter and we are lenient
+	 * @exception MalformedCSVException There is no final delimiter and
+	 * 	we are strict.
 	 * */
-	private Object readDelimitedField()throws IOException,EOR{
+	private boolean scanDelimitedField()throws IOException{
 
 		//read starting delimiter
-		int i=reader.read();
-		if(i!=delimiter){//fail
-			reader.unread(i);
-			throw new EOR();
-		}
+		read(delimiter);
 
 		//Inside the field ...
-		boolean inside=true;
-		StringBuilder builder=new StringBuilder();
-		while(inside){
-			i=reader.read();
-			if(i<0){
-				//In fact, the CSV file is bad. Fail.
-				throw new EOR();
+		//The unescaped field is at mark+start .. mark+start+length, the current
+		//run of characters without delimiter starts at mark+start+run.
+		int start=position-mark;
+		int length=0;
+		int run=0;
+		while(true){
+			if(position==limit && !fill()){
+				//In fact, the CSV file is bad.
+				bad("Missing final delimiter");
+				return false;
 			}
-			char c=(char)i;
-			if(c==delimiter){
-				i=reader.read();
-				if(i==delimiter){
-					//"" -> one escaped "
-					builder.append(delimiter);
-				}else{
-					if(0<=i)reader.unread(i);
-					//else System.out.println("here");
-					reader.unread(delimiter);
-					inside=false;
-				}
-			}else{
-				builder.append(c);
+			if(buffer[position]!=delimiter){
+				position++;
+				continue;
 			}
+			//a delimiter: escaped or the end?
+			int from=mark+start;
+			int n=position-from-run;
+			if(run!=length)
+				System.arraycopy(buffer, from+run, buffer, from+length, n);
+			length+=n;
+			position++;
+			if(peek()!=delimiter)
+				break;//past the final delimiter
+			//"" -> one escaped "
+			buffer[mark+start+length]=delimiter;
+			length++;
+			position++;
+			run=position-mark-start;
 		}
+		field(start, length);
+		return true;
+	}
 
-		//read final delimiter
-		i=reader.read();
-		if(i!=delimiter){//fail
-			reader.unread(i);
-			throw new EOR();
-		}
+	/** Makes an exception for malformed input in the current record. */
+	private MalformedCSVException malformed(String message){
+		boolean header= headed && this.header==null;//reading the header
+		return new MalformedCSVException(message, header ? 0 : count+1);
+	}
 
-		String field=builder.toString();
-		return parseField(field);
-	}
-
-	/** Parses a field:
-	 * <table border="1">
-	 *  <tr><th>CSV field:<th>parsed</tr>
-	 *  <tr><td>""<td>String ""</tr>
-	 *  <tr><td>integers and floating point numbers, according to default locale<td>Number</tr>
-	 *  <tr><td>"true", "TRUE", "false", "FALSE"<td>Boolean</tr>
-	 *  <tr><td>"null"<td>null</tr>
-	 *  <tr><td>... otherwise<td>String</tr>
-	 * </table>
-	 * The string must be not-null, and the characters in it already unescaped.
-	 *  */
-	private Object parseField(String field){
-		//try ""
-		if(field.length()==0)return field;
-
-		//try boolean
-		if("true".equals(field.toLowerCase()))return true;
-		if("false".equals(field.toLowerCase()))return false;
-
-		//try integers
-		ParsePosition position=new ParsePosition(0);
-		Number n=integers.parse(field, position);
-		if(position.getIndex()==field.length())return n;
-
-		//try floating point numbers
-		position.setIndex(0);
-		position.setErrorIndex(-1);
-		n=numbers.parse(field, position);
-		if(position.getIndex()==field.length())return n;
-
-		//try null
-		if("null".equals(field))return null;
-
-		//Otherwise, just the string
-		return field;
-	}
-
-	/** Signals End-of-record. */
-	private static class EOR extends Exception{}
+	/** Malformed input in the current record: throws if we are strict,
+	 * and counts it if there are metrics. */
+	private void bad(String message)throws MalformedCSVException{
+		if(!strict && metrics==null)
+			return;
+		MalformedCSVException e=malformed(message);
+		if(metrics!=null)
+			metrics.malformed(e);
+		if(strict)
+			throw e;
+	}
 }
\ No newline at end of file
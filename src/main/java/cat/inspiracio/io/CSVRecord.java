@@ -0,0 +1,314 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.util.Arrays;
+
+/** One record read by CSVReader.next().
+ * <p>
+ * The same object is reused for every record, and it is only valid until
+ * the reader reads the next record. The fields are interpreted according
+ * to the schema declared with CSVReader.setSchema(), without guessing
+ * their types and without boxing. Skipped columns are never interpreted.
+ * Columns without declared type are STRING.
+ * <p>
+ * get() gives the text of a field as a CharSequence that views the
+ * reader's buffer. Reading records with next() and looking at fields
+ * with get() allocates nothing per record once the buffers have grown
+ * to the size of the largest record.
+ * <p>
+ * The column numbers start at 0. If the reader has a header, the columns
+ * can also be given by name. */
+public final class CSVRecord{
+
+	// State ----------------------------------------------
+
+	/** Interprets the fields. */
+	private final FieldParser parser;
+
+	/** Names of the columns, or null. */
+	private Header header;
+
+	/** Declared types of the columns. */
+	private ColumnType[] schema=new ColumnType[0];
+
+	/** The characters of the record. Belongs to the reader. */
+	private char[] buffer;
+
+	/** Index of the start of the record in the buffer. */
+	private int offset;
+
+	/** Where the fields start, relative to offset. Belongs to the reader. */
+	private int[] starts;
+
+	/** Lengths of the fields. Belongs to the reader. */
+	private int[] lengths;
+
+	/** Number of fields in the record. */
+	private int size;
+
+	/** Values of INT, LONG, and BOOLEAN columns (0 or 1). */
+	private long[] longs=new long[16];
+
+	/** Values of DOUBLE columns. */
+	private double[] doubles=new double[16];
+
+	/** Which columns are null? */
+	private boolean[] nulls=new boolean[16];
+
+	/** Which columns have a field that does not have the declared type? */
+	private boolean[] bad=new boolean[16];
+
+	/** Reusable views of the fields, made when first needed. */
+	private CharSlice[] slices=new CharSlice[16];
+
+	// Constructor ----------------------------------------
+
+	CSVRecord(FieldParser parser){this.parser=parser;}
+
+	// Accessors ------------------------------------------
+
+	/** How many fields does the record have? */
+	public int size(){return size;}
+
+	/** The column names, or null if the reader has no header. */
+	public Header getHeader(){return header;}
+
+	/** The declared type of a column. */
+	public ColumnType getType(int column){
+		return column<schema.length ? schema[column] : ColumnType.STRING;
+	}
+
+	/** Is the field null?
+	 * In lenient mode, a field that does not have the declared type is null. */
+	public boolean isNull(int column){
+		check(column);
+		ColumnType type=getType(column);
+		if(type==ColumnType.STRING || type==ColumnType.SKIP){
+			int length=lengths[column];
+			return length==4 && FieldParser.isNull(buffer, offset+starts[column], length);
+		}
+		return nulls[column];
+	}
+
+	/** Gets the value of an INT column, or 0 if it is null. */
+	public int getInt(int column){
+		check(column, ColumnType.INT);
+		return (int)longs[column];
+	}
+
+	/** Gets the value of an INT or LONG column, or 0 if it is null. */
+	public long getLong(int column){
+		check(column);
+		ColumnType type=getType(column);
+		if(type!=ColumnType.LONG)
+			check(column, ColumnType.INT);
+		return longs[column];
+	}
+
+	/** Gets the value of an INT, LONG, or DOUBLE column, or 0 if it is null. */
+	public double getDouble(int column){
+		check(column);
+		ColumnType type=getType(column);
+		if(type==ColumnType.DOUBLE)
+			return doubles[column];
+		if(type!=ColumnType.LONG)
+			check(column, ColumnType.INT);
+		return longs[column];
+	}
+
+	/** Gets the value of a BOOLEAN column, or false if it is null. */
+	public boolean getBoolean(int column){
+		check(column, ColumnType.BOOLEAN);
+		return longs[column]!=0;
+	}
+
+	/** Gets the text of a field of any column, without copying it.
+	 * <p>
+	 * The CharSequence views the reader's buffer and is valid only until the
+	 * reader reads the next record. For the same column, it is always the
+	 * same object. Use toString() to keep the text. */
+	public CharSequence get(int column){
+		check(column);
+		if(slices.length<=column)
+			slices=Arrays.copyOf(slices, Math.max(column+1, 2*slices.length));
+		CharSlice slice=slices[column];
+		if(slice==null)
+			slice=slices[column]=new CharSlice();
+		return slice.set(buffer, offset+starts[column], lengths[column]);
+	}
+
+	/** Gets a field as CSVReader.readln() would:
+	 * String, Number, Boolean, or null, guessing the type.
+	 * Ignores the schema. */
+	public Object getObject(int column){
+		check(column);
+		return parser.parse(buffer, offset+starts[column], lengths[column], column);
+	}
+
+	/** Gets the text of a field of any column except SKIP.
+	 * A field "null" is null. Makes a new String, unless the reader deduplicates. */
+	public String getString(int column){
+		if(getType(column)==ColumnType.SKIP)
+			throw new IllegalArgumentException("Column " + column + " is SKIP");
+		check(column);
+		int start=offset+starts[column];
+		int length=lengths[column];
+		if(length==4 && FieldParser.isNull(buffer, start, length))
+			return null;
+		return parser.string(buffer, start, length, column);
+	}
+
+	// Accessors by column name -----------------------------
+
+	/** Is the field in the column with this name null? See isNull(int). */
+	public boolean isNull(String name){return isNull(column(name));}
+
+	/** See getInt(int). */
+	public int getInt(String name){return getInt(column(name));}
+
+	/** See getLong(int). */
+	public long getLong(String name){return getLong(column(name));}
+
+	/** See getDouble(int). */
+	public double getDouble(String name){return getDouble(column(name));}
+
+	/** See getBoolean(int). */
+	public boolean getBoolean(String name){return getBoolean(column(name));}
+
+	/** See get(int). */
+	public CharSequence get(String name){return get(column(name));}
+
+	/** See getObject(int). */
+	public Object getObject(String name){return getObject(column(name));}
+
+	/** See getString(int). */
+	public String getString(String name){return getString(column(name));}
+
+	@Override public String toString(){
+		StringBuilder builder=new StringBuilder("[");
+		for(int i=0; i<size; i++){
+			if(0<i)builder.append(", ");
+			builder.append(buffer, offset+starts[i], lengths[i]);
+		}
+		return builder.append(']').toString();
+	}
+
+	// Package methods ------------------------------------
+
+	void setHeader(Header header){this.header=header;}
+
+	void setSchema(ColumnType... schema){
+		this.schema=schema.clone();
+	}
+
+	/** Sets the record that the reader has just scanned,
+	 * and interprets the fields of typed columns. */
+	void set(char[] buffer, int offset, int[] starts, int[] lengths, int size){
+		this.buffer=buffer;
+		this.offset=offset;
+		this.starts=starts;
+		this.lengths=lengths;
+		this.size=size;
+		if(longs.length<size){
+			int n=Math.max(size, 2*longs.length);
+			longs=Arrays.copyOf(longs, n);
+			doubles=Arrays.copyOf(doubles, n);
+			nulls=Arrays.copyOf(nulls, n);
+			bad=Arrays.copyOf(bad, n);
+		}
+		int typed=Math.min(size, schema.length);
+		for(int i=0; i<typed; i++)
+			interpret(i, schema[i]);
+	}
+
+	/** Throws if a field does not have its declared type.
+	 * @param record number of the record, counting from 1 */
+	void verify(int record)throws MalformedCSVException{
+		int typed=Math.min(size, schema.length);
+		for(int i=0; i<typed; i++)
+			if(bad[i])
+				throw new MalformedCSVException("Column " + i + " is not " + schema[i], record);
+	}
+
+	// Helpers --------------------------------------------
+
+	/** Interprets the field of a typed column. */
+	private void interpret(int column, ColumnType type){
+		nulls[column]=false;
+		bad[column]=false;
+		longs[column]=0;
+		doubles[column]=0;
+		if(type==ColumnType.STRING || type==ColumnType.SKIP)
+			return;
+		int start=offset+starts[column];
+		int length=lengths[column];
+		if(FieldParser.isNull(buffer, start, length)){
+			nulls[column]=true;
+			return;
+		}
+		try{
+			switch(type){
+			case INT:
+				long n=parser.parseLong(buffer, start, length);
+				if(n<Integer.MIN_VALUE || Integer.MAX_VALUE<n)
+					throw new NumberFormatException();
+				longs[column]=n;
+				break;
+			case LONG:
+				longs[column]=parser.parseLong(buffer, start, length);
+				break;
+			case DOUBLE:
+				doubles[column]=parser.parseDouble(buffer, start, length);
+				break;
+			case BOOLEAN:
+				longs[column]=FieldParser.parseBoolean(buffer, start, length) ? 1 : 0;
+				break;
+			default:
+			}
+		}catch(IllegalArgumentException e){
+			//Includes NumberFormatException. Lenient: null.
+			nulls[column]=true;
+			bad[column]=true;
+		}
+	}
+
+	/** The index of the column with this name.
+	 * @exception IllegalStateException The reader has no header.
+	 * @exception IllegalArgumentException There is no such column. */
+	private int column(String name){
+		if(header==null)
+			throw new IllegalStateException("No header");
+		int column=header.indexOf(name);
+		if(column<0)
+			throw new IllegalArgumentException("No column " + name);
+		return column;
+	}
+
+	/** Checks that the record has this column. */
+	private void check(int column){
+		if(column<0 || size<=column)
+			throw new IndexOutOfBoundsException("Column " + column + " of " + size);
+	}
+
+	/** Checks that the column has this type. */
+	private void check(int column, ColumnType type){
+		check(column);
+		if(getType(column)!=type)
+			throw new IllegalArgumentException("Column " + column + " is " + getType(column) + ", not " + type);
+	}
+}
@@ -0,0 +1,190 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** All the records of a CSV file in memory, by column.
+ * <p>
+ * Each column has one type: INT, LONG, DOUBLE, BOOLEAN, or STRING.
+ * The values of numeric and boolean columns are in primitive arrays,
+ * with a bitmap of the null values. The values of STRING columns are codes
+ * into a dictionary of the different values. That needs much less memory
+ * than a list of the records from CSVReader.readln().
+ * <p>
+ * The type of a column is the widest type of its values, as readln()
+ * interprets them. When a value does not fit, the column widens:
+ * INT to LONG to DOUBLE, and anything else to STRING. Values that were
+ * read before the column widened to STRING become String.valueOf(value).
+ * An empty field is null, unless the column is STRING.
+ * A record without a column is null in that column.
+ * <p>
+ * Example:
+ * <pre>
+ * CSVTable table=CSVTable.read(new CSVReader(reader))
+ * double[] prices=table.getDoubles(2)
+ * </pre>
+ * The arrays returned by the accessors belong to the table.
+ * Do not modify them. */
+public final class CSVTable{
+
+	// State ----------------------------------------------
+
+	private final Header header;
+
+	private final TableColumn[] columns;
+
+	private final int rows;
+
+	// Constructors ----------------------------------------------
+
+	private CSVTable(Header header, TableColumn[] columns, int rows){
+		this.header=header;
+		this.columns=columns;
+		this.rows=rows;
+	}
+
+	/** Reads all the records that readln() would return.
+	 * Respects header mode, projection and filters of the reader. */
+	public static CSVTable read(CSVReader reader)throws IOException{
+		TableColumn[] columns=new TableColumn[0];
+		int rows=0;
+		Object[] record=reader.readln();
+		while(record!=null){
+			if(columns.length<record.length){
+				int old=columns.length;
+				columns=Arrays.copyOf(columns, record.length);
+				for(int i=old; i<record.length; i++)
+					columns[i]=new TableColumn(rows);
+			}
+			for(int i=0; i<record.length; i++)
+				columns[i].add(record[i]);
+			for(int i=record.length; i<columns.length; i++)
+				columns[i].add(null);
+			rows++;
+			record=reader.readln();
+		}
+		for(TableColumn column : columns)
+			column.finish();
+		return new CSVTable(reader.getProjectedHeader(), columns, rows);
+	}
+
+	// Accessors ------------------------------------------
+
+	/** The column names, or null if the reader had no header. */
+	public Header getHeader(){return header;}
+
+	/** How many records? */
+	public int getRowCount(){return rows;}
+
+	/** How many columns? As many as the widest record. */
+	public int getColumnCount(){return columns.length;}
+
+	/** The type of a column: INT, LONG, DOUBLE, BOOLEAN, or STRING. */
+	public ColumnType getType(int column){return columns[column].type;}
+
+	/** Is the value null? */
+	public boolean isNull(int row, int column){
+		check(row);
+		return columns[column].nulls.get(row);
+	}
+
+	/** Gets a value of an INT column, or 0 if it is null. */
+	public int getInt(int row, int column){
+		check(row);
+		return column(column, ColumnType.INT).ints[row];
+	}
+
+	/** Gets a value of an INT or LONG column, or 0 if it is null. */
+	public long getLong(int row, int column){
+		check(row);
+		TableColumn c=columns[column];
+		if(c.type==ColumnType.INT)
+			return c.ints[row];
+		return column(column, ColumnType.LONG).longs[row];
+	}
+
+	/** Gets a value of an INT, LONG, or DOUBLE column, or 0 if it is null. */
+	public double getDouble(int row, int column){
+		check(row);
+		TableColumn c=columns[column];
+		if(c.type==ColumnType.INT)
+			return c.ints[row];
+		if(c.type==ColumnType.LONG)
+			return c.longs[row];
+		return column(column, ColumnType.DOUBLE).doubles[row];
+	}
+
+	/** Gets a value of a BOOLEAN column, or false if it is null. */
+	public boolean getBoolean(int row, int column){
+		check(row);
+		return column(column, ColumnType.BOOLEAN).booleans[row];
+	}
+
+	/** Gets a value of a STRING column, or null. */
+	public String getString(int row, int column){
+		check(row);
+		TableColumn c=column(column, ColumnType.STRING);
+		return c.nulls.get(row) ? null : c.dictionary[c.codes[row]];
+	}
+
+	/** Gets a value of any column, boxed. */
+	public Object getObject(int row, int column){
+		check(row);
+		return columns[column].get(row);
+	}
+
+	// Column accessors ------------------------------------------
+
+	/** The null values of a column: bit i is set if row i is null. */
+	public BitSet getNulls(int column){return columns[column].nulls;}
+
+	/** The values of an INT column, 0 where null. */
+	public int[] getInts(int column){return column(column, ColumnType.INT).ints;}
+
+	/** The values of a LONG column, 0 where null. */
+	public long[] getLongs(int column){return column(column, ColumnType.LONG).longs;}
+
+	/** The values of a DOUBLE column, 0 where null. */
+	public double[] getDoubles(int column){return column(column, ColumnType.DOUBLE).doubles;}
+
+	/** The values of a BOOLEAN column, false where null. */
+	public boolean[] getBooleans(int column){return column(column, ColumnType.BOOLEAN).booleans;}
+
+	/** The codes of the values of a STRING column, in getDictionary(). */
+	public int[] getCodes(int column){return column(column, ColumnType.STRING).codes;}
+
+	/** The different values of a STRING column, by code. */
+	public String[] getDictionary(int column){return column(column, ColumnType.STRING).dictionary;}
+
+	// Helpers --------------------------------------------
+
+	private void check(int row){
+		if(row<0 || rows<=row)
+			throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+	}
+
+	/** Gets a column and checks its type. */
+	private TableColumn column(int column, ColumnType type){
+		TableColumn c=columns[column];
+		if(c.type!=type)
+			throw new IllegalArgumentException("Column " + column + " is " + c.type + ", not " + type);
+		return c;
+	}
+}
@@ -21,9 +21,28 @@ import java.io.Writer;
 
 /** Writes data in CSV format to somewhere.
  * Spec http://tools.ietf.org/html/rfc4180. 
- * This class does not control that each record has the same number of fields. */
+ * This class does not control that each record has the same number of fields.
+ * <p>
+ * The CSV is collected in an internal buffer and written to the underlying
+ * writer in bulk. By default, the underlying writer is flushed after each
+ * record. For throughput, flush less often with setFlushRecords() or
+ * setFlushChars(), or only on flush() and close().
+ * <p>
+ * By default, every field is enclosed in delimiters. For smaller output,
+ * setQuoting(Quoting.MINIMAL) only encloses fields that need it.
+ * <p>
+ * For compressed output that GzipReader can decompress in parallel, write
+ * through a BlockGzipOutputStream. */
 public class CSVWriter {
 
+	// Constants ----------------------------------------------
+
+	/** Size of the internal buffer. */
+	private static final int BUFFER_SIZE=8*1024;
+
+	/** Characters that may occur in formatted numbers and booleans. */
+	private static final String NUMBER_CHARS="0123456789-.EInfinityNaNtruefals";
+
 	// State ----------------------------------------------
 
 	/** Encloses a field. */
@@ -32,6 +51,9 @@ public class CSVWriter {
 	/** Field separator. */
 	private char separator=',';
 
+	/** Which fields are enclosed in delimiters? */
+	private Quoting quoting=Quoting.ALWAYS;
+
 	/** Goes at the end of a CSV record. */
 	private String terminator=System.getProperty("line.separator");
 
@@ -42,6 +64,36 @@ public class CSVWriter {
 	 * fields on it yet. false: current line already has some fields on it. */
 	private boolean fresh=true;
 
+	/** CSV not yet written to the underlying writer. */
+	private final char[] buffer=new char[BUFFER_SIZE];
+
+	/** Number of chars in the buffer. */
+	private int position=0;
+
+	/** Flush after this many records, or 0 for never. */
+	private int flushRecords=1;
+
+	/** Flush after this many chars, or 0 for never. */
+	private int flushChars=0;
+
+	/** For formatting doubles. */
+	private final StringBuilder number=new StringBuilder(32);
+
+	/** Records since the last flush. */
+	private int records=0;
+
+	/** Chars since the last flush. */
+	private long chars=0;
+
+	/** Collects counters and timings, or null. */
+	private Metrics metrics;
+
+	/** Records, fields, and chars written, and flushes, for the metrics. */
+	private long totalRecords=0;
+	private long totalFields=0;
+	private long totalChars=0;
+	private long flushes=0;
+
 	// Constructors ----------------------------------------------
 
 	/** Makes a new CSVWriter that writes to the given writer.
@@ -59,13 +111,46 @@ public class CSVWriter {
 			throw new IllegalArgumentException(c+"");
 		delimiter=c;
 	}
+
+	/** Sets which fields are enclosed in delimiters.
+	 * The default is ALWAYS. */
+	public void setQuoting(Quoting quoting){
+		if(quoting==null)
+			throw new NullPointerException();
+		this.quoting=quoting;
+	}
+
+	/** Flushes the underlying writer after every so many records.
+	 * The default is 1: after every record.
+	 * @param records How many records, or 0 for not counting records. */
+	public void setFlushRecords(int records){
+		if(records<0)
+			throw new IllegalArgumentException(records+"");
+		flushRecords=records;
+	}
+
+	/** Flushes the underlying writer at the end of a record once so many
+	 * chars have been written since the last flush.
+	 * The default is 0: not counting chars.
+	 * @param chars How many chars, or 0 for not counting chars. */
+	public void setFlushChars(int chars){
+		if(chars<0)
+			throw new IllegalArgumentException(chars+"");
+		flushChars=chars;
+	}
+
+	/** Collects counters and timings in these metrics, or in none (the default).
+	 * Counts RECORDS, FIELDS, CHARS, FLUSHES, and FLUSH_NANOS, and times
+	 * writeln() and the flushes. */
+	public void setMetrics(Metrics metrics){this.metrics=metrics;}
+
+	public Metrics getMetrics(){return metrics;}
 	
 	// Business methods ------------------------------------------
 
 	/** Writes some objects to CSV, each object as one more field in the current
-	 * record. The fields are always enclosed in the delimiters double quotes.
-	 * The fields are escaped properly according to RFC4180. At the end, flushes
-	 * the underlying writer.
+	 * record. The fields are enclosed in delimiters according to the quoting
+	 * policy, and escaped properly according to RFC4180.
 	 * 
 	 * @param fields
 	 *            Meant for primitives and String. Other objects are converted
@@ -73,31 +158,70 @@ public class CSVWriter {
 	 * @exception IOException Writing has failed.
 	 */
 	public void write(Object... fields) throws IOException {
-		for (Object field : fields) {
-			if (!fresh)
-				separator();// the line already has fields on it
-			
-			String s = toString(field);
-			
-			delimiter();// opening quote always
-			
-			int N = s.length();
-			for (int i = 0; i < N; i++) {
-				char c = s.charAt(i);
-				if (c == delimiter)
-					delimiter();// escape
-				writer.write(c);
-			}
-			
-			delimiter();// closing quote always
-			fresh = false;// Now the line definitely is not fresh anymore.
+		for (Object field : fields)
+			field(field, toString(field));
+	}
+
+	/** Writes a String as one more field in the current record.
+	 * Like write(s), without varargs array. null is represented by "null". */
+	public void writeString(String s) throws IOException {
+		field(s, toString(s));
+	}
+
+	/** Writes an int as one more field in the current record,
+	 * formatted directly into the buffer. */
+	public void writeInt(int n) throws IOException {
+		writeLong(n);
+	}
+
+	/** Writes a long as one more field in the current record,
+	 * formatted directly into the buffer. */
+	public void writeLong(long n) throws IOException {
+		if (!numberSafe()) {
+			write(n);
+			return;
 		}
+		boolean quote = startNumber();
+		appendLong(n);
+		if (quote)
+			delimiter();
+	}
+
+	/** Writes a double as one more field in the current record,
+	 * formatted as Double.toString() directly into the buffer. */
+	public void writeDouble(double d) throws IOException {
+		if (!numberSafe()) {
+			write(d);
+			return;
+		}
+		boolean quote = startNumber();
+		number.setLength(0);
+		number.append(d);// no String
+		append(number);
+		if (quote)
+			delimiter();
+	}
+
+	/** Writes a boolean as one more field in the current record. */
+	public void writeBoolean(boolean b) throws IOException {
+		if (!numberSafe()) {
+			write(b);
+			return;
+		}
+		startField();
+		boolean quote = quoting != Quoting.MINIMAL;
+		if (quote)
+			delimiter();
+		String s = b ? "true" : "false";
+		append(s, 0, s.length());
+		if (quote)
+			delimiter();
 	}
 
 	/** Writes some objects to CSV, each object as one more field in the current
-	 * record, and then writes a line ending to terminate the record, and
-	 * flushes the underlying writer. The fields are escaped properly according
-	 * to RFC4180.
+	 * record, and then writes a line ending to terminate the record.
+	 * Flushes the underlying writer according to the flush policy.
+	 * The fields are escaped properly according to RFC4180.
 	 * 
 	 * @param fields
 	 *            Meant for primitives and String. Other objects are converted
@@ -106,20 +230,55 @@ public class CSVWriter {
 	 *                Writing has failed.
 	 */
 	public void writeln(Object... fields) throws IOException {
+		long start = metrics != null && metrics.sample() ? System.nanoTime() : 0;
 		write(fields);
 		endRecord();
+		if (start != 0)
+			metrics.record(System.nanoTime() - start);
 	}
 
-	protected void endRecord() throws IOException {
-		writer.write(terminator);
-		writer.flush();
+	/** Terminates the record, after writing its fields with write() or
+	 * the typed write methods.
+	 * Flushes the underlying writer according to the flush policy. */
+	public void endRecord() throws IOException {
+		append(terminator, 0, terminator.length());
 		fresh = true;// fresh line
+		records++;
+		totalRecords++;
+		if (metrics != null)
+			publish();
+		if ((0 < flushRecords && flushRecords <= records) || (0 < flushChars && flushChars <= chars + position))
+			flush();
 	}
 
-	public void flush()throws IOException{writer.flush();}
+	/** Writes the buffer to the underlying writer, and flushes it. */
+	public void flush()throws IOException{
+		drain();
+		if (metrics != null && metrics.timing()) {
+			long start = System.nanoTime();
+			writer.flush();
+			flushes++;
+			metrics.set(Counter.FLUSHES, flushes);
+			metrics.flush(System.nanoTime() - start);
+		} else {
+			writer.flush();
+			flushes++;
+			if (metrics != null)
+				metrics.set(Counter.FLUSHES, flushes);
+		}
+		records = 0;
+		chars = 0;
+	}
 	
 	/** Flushes and closes underlying writer. */
-	public void close() throws IOException{writer.close();}
+	public void close() throws IOException{
+		drain();
+		writer.close();
+		if (metrics != null) {
+			publish();
+			metrics.finished();
+		}
+	}
 
 	// Helpers ---------------------------------------------------------------
 
@@ -129,11 +288,160 @@ public class CSVWriter {
 		return field.toString();
 	}
 	
+	/** Writes one field. */
+	private void field(Object field, String s) throws IOException {
+		startField();
+		int N = s.length();
+
+		if (!quote(field, s)) {
+			append(s, 0, N);
+			return;
+		}
+		
+		delimiter();// opening quote
+
+		// copy runs without delimiter in bulk
+		int run = 0;
+		int i = s.indexOf(delimiter);
+		while (0 <= i) {
+			append(s, run, i + 1);
+			delimiter();// escape
+			run = i + 1;
+			i = s.indexOf(delimiter, run);
+		}
+		append(s, run, N);
+		
+		delimiter();// closing quote
+	}
+
+	/** Writes the separator if needed. */
+	private void startField() throws IOException {
+		totalFields++;
+		if (!fresh)
+			separator();// the line already has fields on it
+		fresh = false;// Now the line definitely is not fresh anymore.
+	}
+
+	/** Starts a number field, and writes the opening delimiter if the number
+	 * must be quoted. Numbers never need escaping, as long as numberSafe().
+	 * @return Must the number be quoted? */
+	private boolean startNumber() throws IOException {
+		startField();
+		boolean quote = quoting == Quoting.ALWAYS;
+		if (quote)
+			delimiter();
+		return quote;
+	}
+
+	/** Can the separator not occur in a formatted number or boolean?
+	 * Otherwise the typed write methods go through write(Object...). */
+	private boolean numberSafe(){
+		return NUMBER_CHARS.indexOf(separator) < 0;
+	}
+
+	/** Appends a long in decimal, without making a String. */
+	private void appendLong(long n) throws IOException {
+		if (buffer.length - position < 20)
+			drain();
+		if (n == Long.MIN_VALUE) {
+			String s = Long.toString(n);
+			append(s, 0, s.length());
+			return;
+		}
+		if (n < 0) {
+			buffer[position++] = '-';
+			n = -n;
+		}
+		int digits = 1;
+		for (long m = n; 10 <= m; m /= 10)
+			digits++;
+		int end = position + digits;
+		for (int i = end - 1; position <= i; i--) {
+			buffer[i] = (char) ('0' + n % 10);
+			n /= 10;
+		}
+		position = end;
+	}
+
+	/** Must this field be enclosed in delimiters? */
+	private boolean quote(Object field, String s){
+		switch (quoting) {
+		case MINIMAL:
+			return special(s);
+		case NON_NUMERIC:
+			return !(field instanceof Number) || special(s);
+		default:
+			return true;
+		}
+	}
+
+	/** Does the string contain the separator, the delimiter, CR, or LF?
+	 * One pass, without copying. */
+	private boolean special(String s){
+		int N = s.length();
+		for (int i = 0; i < N; i++) {
+			char c = s.charAt(i);
+			if (c == separator || c == delimiter || c == '\r' || c == '\n')
+				return true;
+		}
+		return false;
+	}
+
 	private void separator() throws IOException{
-		writer.write(separator);
+		append(separator);
 	}
 	
 	private void delimiter()throws IOException{
-		writer.write(delimiter);
+		append(delimiter);
+	}
+
+	/** Appends a char to the buffer. */
+	private void append(char c)throws IOException{
+		if (position == buffer.length)
+			drain();
+		buffer[position++] = c;
+	}
+
+	/** Appends a StringBuilder to the buffer, in bulk. */
+	private void append(StringBuilder s)throws IOException{
+		int from = 0;
+		int to = s.length();
+		while (from < to) {
+			if (position == buffer.length)
+				drain();
+			int n = Math.min(to - from, buffer.length - position);
+			s.getChars(from, from + n, buffer, position);
+			position += n;
+			from += n;
+		}
+	}
+
+	/** Appends s[from] .. s[to-1] to the buffer, in bulk. */
+	private void append(String s, int from, int to)throws IOException{
+		while (from < to) {
+			if (position == buffer.length)
+				drain();
+			int n = Math.min(to - from, buffer.length - position);
+			s.getChars(from, from + n, buffer, position);
+			position += n;
+			from += n;
+		}
+	}
+
+	/** Writes the buffer to the underlying writer, without flushing it. */
+	private void drain()throws IOException{
+		if (position == 0)
+			return;
+		writer.write(buffer, 0, position);
+		chars += position;
+		totalChars += position;
+		position = 0;
+	}
+
+	/** Updates the metrics. CHARS counts what has reached the underlying writer. */
+	private void publish(){
+		metrics.set(Counter.RECORDS, totalRecords);
+		metrics.set(Counter.FIELDS, totalFields);
+		metrics.set(Counter.CHARS, totalChars);
 	}
 }
\ No newline at end of file
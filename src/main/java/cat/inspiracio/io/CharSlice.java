@@ -0,0 +1,62 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+/** A view of some characters of an array, without copying them.
+ * Reusable: set() makes it view other characters. */
+final class CharSlice implements CharSequence{
+
+	private char[] chars;
+	private int start;
+	private int length;
+
+	/** Views chars[start] .. chars[start+length-1]. */
+	CharSlice set(char[] chars, int start, int length){
+		this.chars=chars;
+		this.start=start;
+		this.length=length;
+		return this;
+	}
+
+	@Override public int length(){return length;}
+
+	@Override public char charAt(int index){
+		if(index<0 || length<=index)
+			throw new IndexOutOfBoundsException(index + "");
+		return chars[start+index];
+	}
+
+	/** Makes a new CharSlice on the same characters. */
+	@Override public CharSequence subSequence(int from, int to){
+		if(from<0 || to<from || length<to)
+			throw new IndexOutOfBoundsException(from + ".." + to);
+		return new CharSlice().set(chars, start+from, to-from);
+	}
+
+	/** Does this slice have exactly the characters of the other sequence? */
+	boolean contentEquals(CharSequence s){
+		if(s.length()!=length)
+			return false;
+		for(int i=0; i<length; i++)
+			if(chars[start+i]!=s.charAt(i))
+				return false;
+		return true;
+	}
+
+	/** Makes a new String with the characters. */
+	@Override public String toString(){return new String(chars, start, length);}
+}
@@ -0,0 +1,63 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+/** Declared type of a column, for reading typed records with CSVReader.next().
+ * <p>
+ * A field "null" is null in every column. An empty field is null in
+ * every column except STRING, where it is "". */
+public enum ColumnType{
+
+	/** Integer that fits into an int, read with CSVRecord.getInt(). */
+	INT,
+
+	/** Integer that fits into a long, read with CSVRecord.getLong(). */
+	LONG,
+
+	/** Floating point number, read with CSVRecord.getDouble(). */
+	DOUBLE,
+
+	/** "true" or "false" in any case, read with CSVRecord.getBoolean(). */
+	BOOLEAN,
+
+	/** Text, read with CSVRecord.getString(). */
+	STRING,
+
+	/** Column that is not read. */
+	SKIP;
+
+	/** The type of a value as CSVReader.readln() returns it, not null. */
+	static ColumnType of(Object value){
+		if(value instanceof Integer)return INT;
+		if(value instanceof Long)return LONG;
+		if(value instanceof Number)return DOUBLE;
+		if(value instanceof Boolean)return BOOLEAN;
+		return STRING;
+	}
+
+	/** The narrowest type that holds the values of both types:
+	 * INT widens to LONG widens to DOUBLE, and anything else to STRING.
+	 * @param a a type, or null for no type yet */
+	static ColumnType widest(ColumnType a, ColumnType b){
+		if(a==null || a==b)return b;
+		if(a.numeric() && b.numeric())
+			return a.ordinal() < b.ordinal() ? b : a;
+		return STRING;
+	}
+
+	private boolean numeric(){return this==INT || this==LONG || this==DOUBLE;}
+}
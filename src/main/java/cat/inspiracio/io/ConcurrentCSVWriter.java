@@ -0,0 +1,210 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/** A CSV writer that many threads may share.
+ * <p>
+ * Each thread encodes its records with its own CSVWriter into its own
+ * buffer (a stripe). When a stripe holds enough complete records, they
+ * are written to the underlying writer in one go, holding its lock only
+ * for the copy. Records never interleave, and the records of one thread
+ * stay in order. The records of different threads are in no particular
+ * order.
+ * <p>
+ * The underlying writer is only flushed by flush() and close(), which
+ * also write the records that are still in the stripes. When a thread
+ * has died, its stripe is written and forgotten at the next flush() or
+ * when a new thread starts writing, so thread pools with churn do not
+ * accumulate stripes.
+ * <p>
+ * Configure the writer before sharing it. */
+public class ConcurrentCSVWriter implements Closeable, Flushable{
+
+	// Constants ----------------------------------------------
+
+	/** A stripe writes its records once it has this many chars. */
+	private static final int PUBLISH=8*1024;
+
+	// State ----------------------------------------------
+
+	/** The underlying writer. Lock it to write. */
+	private final Writer writer;
+
+	private char delimiter='"';
+	private char separator=',';
+	private Quoting quoting=Quoting.ALWAYS;
+
+	/** The stripe of each thread. */
+	private final ThreadLocal<Stripe> local=new ThreadLocal<Stripe>();
+
+	/** All stripes, for flush(). The stripes of threads that have died
+	 * are removed by prune(). */
+	private final Queue<Stripe> stripes=new ConcurrentLinkedQueue<Stripe>();
+
+	private volatile boolean closed=false;
+
+	// Constructors ----------------------------------------------
+
+	/** @param w Where the data will go. */
+	public ConcurrentCSVWriter(Writer w){writer=w;}
+
+	// Configuration methods ------------------------------------------
+
+	/** Sets the field separator. Normally it's ',' or ';'. */
+	public void setSeparator(char s){separator=s;}
+
+	/** Sets the delimiter of a field. Accepts single or double quote. */
+	public void setDelimiter(char c){
+		if(c!='\'' && c!='"')
+			throw new IllegalArgumentException(c+"");
+		delimiter=c;
+	}
+
+	/** Sets which fields are enclosed in delimiters.
+	 * The default is ALWAYS. */
+	public void setQuoting(Quoting quoting){
+		if(quoting==null)
+			throw new NullPointerException();
+		this.quoting=quoting;
+	}
+
+	// Business methods ------------------------------------------
+
+	/** Writes one record, as CSVWriter.writeln() does.
+	 * @exception IllegalStateException The writer is closed. */
+	public void writeln(Object... fields)throws IOException{
+		if(closed)
+			throw new IllegalStateException("Closed");
+		Stripe stripe=local.get();
+		if(stripe==null){
+			stripe=new Stripe();
+			local.set(stripe);
+			prune();//a new thread: maybe others have died
+			stripes.add(stripe);
+		}
+		synchronized(stripe){
+			stripe.csv.writeln(fields);
+		}
+	}
+
+	/** Writes the records of all stripes, and flushes the underlying writer. */
+	@Override public void flush()throws IOException{
+		for(Stripe stripe : stripes){
+			synchronized(stripe){
+				stripe.publish();
+			}
+		}
+		prune();
+		synchronized(writer){
+			writer.flush();
+		}
+	}
+
+	/** Writes the records of all stripes, and closes the underlying writer. */
+	@Override public void close()throws IOException{
+		closed=true;
+		flush();
+		synchronized(writer){
+			writer.close();
+		}
+	}
+
+	// Package methods ------------------------------------
+
+	/** How many stripes are there? */
+	int getStripes(){return stripes.size();}
+
+	// Helpers ---------------------------------------------------------------
+
+	/** Writes the records of the stripes of threads that have died,
+	 * and forgets those stripes. */
+	private void prune()throws IOException{
+		Iterator<Stripe> i=stripes.iterator();
+		while(i.hasNext()){
+			Stripe stripe=i.next();
+			if(stripe.isAlive())
+				continue;
+			synchronized(stripe){
+				stripe.publish();
+			}
+			i.remove();
+		}
+	}
+
+	/** The buffer of one thread.
+	 * The CSVWriter flushes after every record, so the buffer
+	 * only has complete records when flush() is called. */
+	private class Stripe extends Writer{
+
+		private final CSVWriter csv=new CSVWriter(this);
+
+		private char[] chars=new char[2*PUBLISH];
+
+		private int count=0;
+
+		/** The thread that writes into this stripe. Weak, so that the
+		 * stripe does not keep it. */
+		private final WeakReference<Thread> owner=new WeakReference<Thread>(Thread.currentThread());
+
+		Stripe(){
+			csv.setDelimiter(delimiter);
+			csv.setSeparator(separator);
+			csv.setQuoting(quoting);
+		}
+
+		@Override public void write(char[] cbuf, int off, int len){
+			if(chars.length < count+len)
+				chars=Arrays.copyOf(chars, Math.max(2*chars.length, count+len));
+			System.arraycopy(cbuf, off, chars, count, len);
+			count+=len;
+		}
+
+		/** At the end of a record */
+		@Override public void flush()throws IOException{
+			if(PUBLISH<=count)
+				publish();
+		}
+
+		/** Writes the records to the underlying writer. */
+		void publish()throws IOException{
+			if(count==0)
+				return;
+			synchronized(writer){
+				writer.write(chars, 0, count);
+			}
+			count=0;
+		}
+
+		/** Is the owner thread still alive? */
+		boolean isAlive(){
+			Thread thread=owner.get();
+			return thread!=null && thread.isAlive();
+		}
+
+		@Override public void close(){}
+	}
+}
@@ -0,0 +1,64 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+/** What Metrics counts. Some counters are only for readers, some only for
+ * writers. */
+public enum Counter{
+
+	/** Records read or written. A reader also counts records that do not
+	 * pass the filters. */
+	RECORDS,
+
+	/** Fields read or written. A reader counts the fields it has scanned. */
+	FIELDS,
+
+	/** Chars read from the underlying reader, or written to the underlying
+	 * writer. Chars, not bytes: readers and writers only see decoded text.
+	 * To count bytes, count them in the stream below the Reader or Writer. */
+	CHARS,
+
+	/** Reader: fields enclosed in delimiters. */
+	QUOTED_FIELDS,
+
+	/** Reader: records that do not pass the filters. */
+	FILTERED,
+
+	/** Reader: malformed records, in strict or lenient mode. */
+	MALFORMED,
+
+	/** Reader: fields that readln() interpreted as String. */
+	STRINGS,
+
+	/** Reader: fields that readln() interpreted as Integer or Long. */
+	INTEGERS,
+
+	/** Reader: fields that readln() interpreted as another Number. */
+	DECIMALS,
+
+	/** Reader: fields that readln() interpreted as Boolean. */
+	BOOLEANS,
+
+	/** Reader: fields that readln() interpreted as null. */
+	NULLS,
+
+	/** Writer: flushes of the underlying writer. */
+	FLUSHES,
+
+	/** Writer: nanoseconds spent flushing, if timings are on. */
+	FLUSH_NANOS
+}
@@ -0,0 +1,81 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+/** Decides whether a record is read, by looking at one of its fields.
+ * See CSVReader.addFilter().
+ * <p>
+ * Filters may be called from several threads if the records are read
+ * with a parallel stream. */
+public interface FieldFilter{
+
+	/** Does the field pass?
+	 * @param chars contains the field, already unescaped
+	 * @param start index of the first character of the field
+	 * @param length number of characters of the field */
+	boolean accept(char[] chars, int start, int length);
+
+	/** The field is exactly this text. */
+	static FieldFilter equalTo(final String text){
+		return new FieldFilter(){
+			@Override public boolean accept(char[] chars, int start, int length){
+				if(length!=text.length())
+					return false;
+				for(int i=0; i<length; i++)
+					if(chars[start+i]!=text.charAt(i))
+						return false;
+				return true;
+			}
+		};
+	}
+
+	/** The field starts with this text. */
+	static FieldFilter startsWith(final String prefix){
+		return new FieldFilter(){
+			@Override public boolean accept(char[] chars, int start, int length){
+				int n=prefix.length();
+				if(length<n)
+					return false;
+				for(int i=0; i<n; i++)
+					if(chars[start+i]!=prefix.charAt(i))
+						return false;
+				return true;
+			}
+		};
+	}
+
+	/** The field is a number between min and max, inclusive.
+	 * Numbers are recognised as CSVReader.readln() does. */
+	static FieldFilter between(final double min, final double max){
+		final ThreadLocal<FieldParser> parsers=new ThreadLocal<FieldParser>(){
+			@Override protected FieldParser initialValue(){return new FieldParser();}
+		};
+		return new FieldFilter(){
+			@Override public boolean accept(char[] chars, int start, int length){
+				if(FieldParser.isNull(chars, start, length))
+					return false;
+				double d;
+				try{
+					d=parsers.get().parseDouble(chars, start, length);
+				}catch(NumberFormatException e){
+					return false;
+				}
+				return min<=d && d<=max;
+			}
+		};
+	}
+}
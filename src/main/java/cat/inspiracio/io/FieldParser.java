@@ -0,0 +1,393 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.util.Arrays;
+import java.util.Locale;
+
+import cat.inspiracio.text.NumberFormatWrapper;
+
+/** Interprets the text of a CSV field as a Java value.
+ * <p>
+ * Plain fields are classified in a single pass over the characters:
+ * booleans, null, integers with optional grouping like "1,234" and
+ * decimals like "-1.5". Text that cannot be a number is recognised as
+ * String at the first character that a NumberFormat would not accept.
+ * Only exotic inputs, such as exponents, "NaN", very long numbers or
+ * non-ASCII digits, fall back to NumberFormat.
+ * <p>
+ * When interpreting numbers, Locale.US is assumed.
+ * Not threadsafe. */
+final class FieldParser{
+
+	// Constants ----------------------------------------------
+
+	/** Integers with at most this many digits surely fit into a long. */
+	private static final int MAX_DIGITS=18;
+
+	/** The infinity symbol, which NumberFormat accepts. */
+	private static final char INFINITY='\u221E';
+
+	/** Integers with at most this many digits are exact as double. */
+	private static final int MAX_EXACT_DIGITS=15;
+
+	/** Powers of ten that are exact as double. */
+	private static final double[] POWERS={1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	/** Returned by number() if the field must be parsed by NumberFormat. */
+	private static final Object EXOTIC=new Object();
+
+	/** Detects integers.
+	 *
+	 * Internationalised: numbers according to US locale.
+	 * Prefers Integer over Long.
+	 * NumberFormat is not threadsafe. */
+	private NumberFormat integers=new NumberFormatWrapper(NumberFormat.getIntegerInstance(Locale.US)){
+
+		/** Return Integer if possible rather than Long. */
+		@Override public Number parse(String source, ParsePosition position) {
+			Number number=super.parse(source, position);
+			if(number==null)
+				return null;
+			long n=number.longValue();
+			if(Integer.MIN_VALUE <= n && n <= Integer.MAX_VALUE)
+				return Integer.valueOf(number.intValue());
+			return number;
+		}
+	};
+
+	/** Detects floating point numbers.
+	 *
+	 * Internationalised: numbers according to US locale.
+	 * Prefers Integer over Long.
+	 * NumberFormat is not threadsafe. */
+	private NumberFormat numbers=new NumberFormatWrapper(NumberFormat.getNumberInstance(Locale.US)){
+
+		/** Return Integer if possible rather than Long. */
+		@Override public Number parse(String source, ParsePosition position) {
+			Number number=super.parse(source, position);
+			if(number==null)
+				return null;
+			long n=number.longValue();
+			if(number instanceof Long && Integer.MIN_VALUE <= n && n <= Integer.MAX_VALUE)
+				return Integer.valueOf(number.intValue());
+			return number;
+		}
+	};
+
+	/** Maximal number of values in the cache of a column, or 0 for no deduplication. */
+	private int deduplicate=0;
+
+	/** Deduplicates Strings, by column, or null. */
+	private StringCache[] caches;
+
+	// Methods ------------------------------------------------
+
+	/** Deduplicates the Strings that the parser makes, per column, or not.
+	 * @param capacity Maximal number of values in the cache of a column,
+	 * 	or 0 for no deduplication. */
+	void setDeduplicate(int capacity){
+		if(capacity<0)
+			throw new IllegalArgumentException(capacity+"");
+		deduplicate=capacity;
+		caches=null;
+	}
+
+	int getDeduplicate(){return deduplicate;}
+
+	/** The cache of a column, or null if there is none yet. */
+	StringCache getCache(int column){
+		return caches!=null && column<caches.length ? caches[column] : null;
+	}
+
+	/** Makes a String of some characters, maybe from the cache of the column.
+	 * @param column index of the column, or -1 for no cache */
+	String string(char[] chars, int start, int length, int column){
+		if(deduplicate==0 || column<0)
+			return new String(chars, start, length);
+		if(caches==null)
+			caches=new StringCache[Math.max(16, column+1)];
+		else if(caches.length<=column)
+			caches=Arrays.copyOf(caches, Math.max(column+1, 2*caches.length));
+		StringCache cache=caches[column];
+		if(cache==null)
+			cache=caches[column]=new StringCache(deduplicate);
+		return cache.get(chars, start, length);
+	}
+
+	/** Parses a field. See parse(char[], int, int). */
+	Object parse(String field){
+		return parse(field.toCharArray(), 0, field.length());
+	}
+
+	/** Parses a field that is not in a column. See parse(char[], int, int, int). */
+	Object parse(char[] chars, int start, int length){
+		return parse(chars, start, length, -1);
+	}
+
+	/** Parses a field:
+	 * <table border="1">
+	 *  <tr><th>CSV field:<th>parsed</tr>
+	 *  <tr><td>""<td>String ""</tr>
+	 *  <tr><td>integers and floating point numbers, according to US locale<td>Number</tr>
+	 *  <tr><td>"true", "TRUE", "false", "FALSE"<td>Boolean</tr>
+	 *  <tr><td>"null"<td>null</tr>
+	 *  <tr><td>... otherwise<td>String</tr>
+	 * </table>
+	 * The characters must be already unescaped.
+	 * Only makes a String if the field is a String.
+	 * @param chars contains the field
+	 * @param start index of the first character of the field
+	 * @param length number of characters of the field
+	 * @param column index of the column of the field, for deduplication,
+	 * 	or -1
+	 *  */
+	Object parse(char[] chars, int start, int length, int column){
+		//try ""
+		if(length==0)return "";
+
+		//try boolean
+		char c=chars[start];
+		if((c=='t' || c=='T') && is(chars, start, length, "true"))return true;
+		if((c=='f' || c=='F') && is(chars, start, length, "false"))return false;
+
+		//try numbers, unless it is "NaN..."
+		Object n= (c=='N' && 3<=length && chars[start+1]=='a' && chars[start+2]=='N') ? EXOTIC : number(chars, start, length);
+		if(n==EXOTIC)
+			return parseWithNumberFormat(new String(chars, start, length));
+		if(n!=null)return n;
+
+		//try null
+		if(length==4 && c=='n' && chars[start+1]=='u' && chars[start+2]=='l' && chars[start+3]=='l')return null;
+
+		//Otherwise, just the string
+		return string(chars, start, length, column);
+	}
+
+	/** Parses a field with NumberFormat.
+	 * This is how CSVReader has always parsed fields, and it is the
+	 * reference for parse(). */
+	Object parseWithNumberFormat(String field){
+		//try ""
+		if(field.length()==0)return field;
+
+		//try boolean
+		if("true".equals(field.toLowerCase()))return true;
+		if("false".equals(field.toLowerCase()))return false;
+
+		//try integers
+		ParsePosition position=new ParsePosition(0);
+		Number n=integers.parse(field, position);
+		if(position.getIndex()==field.length())return n;
+
+		//try floating point numbers
+		position.setIndex(0);
+		position.setErrorIndex(-1);
+		n=numbers.parse(field, position);
+		if(position.getIndex()==field.length())return n;
+
+		//try null
+		if("null".equals(field))return null;
+
+		//Otherwise, just the string
+		return field;
+	}
+
+	// Typed parsing ------------------------------------------
+
+	/** Is the field null in a typed column: "null" or empty? */
+	static boolean isNull(char[] chars, int start, int length){
+		return length==0 || length==4 && chars[start]=='n' && chars[start+1]=='u' && chars[start+2]=='l' && chars[start+3]=='l';
+	}
+
+	/** Parses an integer field without boxing.
+	 * Accepts exactly the fields that parse() makes Integer or Long.
+	 * @exception NumberFormatException The field is not such an integer. */
+	long parseLong(char[] chars, int start, int length){
+		int end=start+length;
+		int i=start;
+		boolean negative= i<end && chars[i]=='-';
+		if(negative)i++;
+		long value=0;
+		int digits=0;
+		for(; i<end; i++){
+			char c=chars[i];
+			if(digit(c) && digits<MAX_DIGITS){
+				digits++;
+				value=10*value + (c-'0');
+			}
+			else if(!(c==',' && 0<digits && i+1<end && digit(chars[i+1])))
+				break;
+		}
+		if(i==end && 0<digits)
+			return negative ? -value : value;
+
+		//Not plain: ask parse()
+		Object n=parse(chars, start, length);
+		if(n instanceof Integer || n instanceof Long)
+			return ((Number)n).longValue();
+		throw new NumberFormatException(new String(chars, start, length));
+	}
+
+	/** Parses a number field without boxing.
+	 * Accepts exactly the fields that parse() makes a Number.
+	 * @exception NumberFormatException The field is not a number. */
+	double parseDouble(char[] chars, int start, int length){
+		int end=start+length;
+		int i=start;
+		boolean negative= i<end && chars[i]=='-';
+		if(negative)i++;
+		long value=0;
+		int digits=0;
+		int fraction=-1;//digits after the decimal point, or -1 if there is no decimal point
+		for(; i<end; i++){
+			char c=chars[i];
+			if(digit(c) && digits<MAX_EXACT_DIGITS){
+				digits++;
+				value=10*value + (c-'0');
+				if(0<=fraction)fraction++;
+			}
+			else if(c==',' && fraction<0 && 0<digits && i+1<end && digit(chars[i+1]))
+				continue;
+			else if(c=='.' && fraction<0 && 0<digits && i+1<end && digit(chars[i+1]))
+				fraction=0;
+			else
+				break;
+		}
+		if(i==end && 0<digits){
+			//value and 10^fraction are exact, so the quotient is correctly rounded.
+			double d= fraction<=0 ? value : value / POWERS[fraction];
+			return negative ? -d : d;
+		}
+
+		//Not plain: ask parse()
+		Object n=parse(chars, start, length);
+		if(n instanceof Number)
+			return ((Number)n).doubleValue();
+		throw new NumberFormatException(new String(chars, start, length));
+	}
+
+	/** Parses "true" or "false", in any case.
+	 * @exception IllegalArgumentException The field is not a boolean. */
+	static boolean parseBoolean(char[] chars, int start, int length){
+		if(is(chars, start, length, "true"))return true;
+		if(is(chars, start, length, "false"))return false;
+		throw new IllegalArgumentException(new String(chars, start, length));
+	}
+
+	// Helpers ------------------------------------------------
+
+	/** Does the field equal the lower-case ASCII word, ignoring case? */
+	private static boolean is(char[] chars, int start, int length, String word){
+		if(length!=word.length())
+			return false;
+		for(int i=0; i<length; i++)
+			if((chars[start+i] | 0x20) != word.charAt(i))
+				return false;
+		return true;
+	}
+
+	/** Parses plain numbers -d,ddd.ddd in a single pass.
+	 * @return Integer, Long, or Double;
+	 * 	null if the field is surely not a number;
+	 * 	EXOTIC if NumberFormat must decide. */
+	private static Object number(char[] chars, int start, int length){
+		int end=start+length;
+		int i=start;
+		boolean negative= chars[i]=='-';
+		if(negative)i++;
+		if(i==end || !digit(chars[i]))
+			return rest(chars, i, end);
+
+		//integer part, maybe with grouping
+		long value=0;
+		int digits=0;
+		boolean grouping=false;
+		for(; i<end; i++){
+			char c=chars[i];
+			if(digit(c)){
+				if(MAX_DIGITS < ++digits)
+					return EXOTIC;
+				value=10*value + (c-'0');
+			}
+			else if(c==',' && i+1<end && digit(chars[i+1]))
+				grouping=true;
+			else
+				break;
+		}
+		if(i==end)
+			return integer(negative ? -value : value);
+		if(chars[i]!='.' || i+1==end)
+			return rest(chars, i, end);
+
+		//fraction part
+		boolean zero=true;
+		for(i++; i<end; i++){
+			char c=chars[i];
+			if(!digit(c))
+				return rest(chars, i, end);
+			if(c!='0')
+				zero=false;
+		}
+		if(zero){
+			if(negative && value==0)
+				return -0.0;//as NumberFormat does
+			return integer(negative ? -value : value);
+		}
+		return Double.valueOf(Double.parseDouble(plain(chars, start, end, grouping)));
+	}
+
+	/** The rest of the field does not fit the plain grammar.
+	 * If it contains a character that NumberFormat does not accept anywhere,
+	 * the field is surely not a number.
+	 * @return null if surely not a number, otherwise EXOTIC */
+	private static Object rest(char[] chars, int i, int end){
+		for(; i<end; i++){
+			char c=chars[i];
+			if(c<128){
+				if(!digit(c) && c!=',' && c!='.' && c!='-' && c!='+' && c!='E')
+					return null;
+			}
+			else if(c!=INFINITY && Character.digit(c, 10)<0)
+				return null;
+		}
+		return EXOTIC;
+	}
+
+	private static boolean digit(char c){return '0'<=c && c<='9';}
+
+	/** Prefers Integer over Long. */
+	private static Number integer(long n){
+		if(Integer.MIN_VALUE <= n && n <= Integer.MAX_VALUE)
+			return Integer.valueOf((int)n);
+		return Long.valueOf(n);
+	}
+
+	/** The characters of the number without grouping separators. */
+	private static String plain(char[] chars, int start, int end, boolean grouping){
+		if(!grouping)
+			return new String(chars, start, end-start);
+		StringBuilder builder=new StringBuilder(end-start);
+		for(int i=start; i<end; i++)
+			if(chars[i]!=',')
+				builder.append(chars[i]);
+		return builder.toString();
+	}
+}
@@ -0,0 +1,351 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/** Reads the records of a CSV file that another process keeps appending to.
+ * <p>
+ * readln() and next() return a record only when it is complete: when its
+ * line terminator has been written. A last line without terminator, or a
+ * delimited field that has not been closed yet, waits for more data.
+ * A record terminated by CR alone at the end of the data also waits,
+ * because the LF of a CRLF may still come. Then readln() and next()
+ * return null without blocking, and await() waits for a complete record,
+ * polling the file with exponential backoff.
+ * <pre>
+ * FollowCSVReader csv=new FollowCSVReader(file)
+ * while(running){
+ *  if(csv.await(1, TimeUnit.SECONDS)){
+ *   Object[] line=csv.readln()
+ *   process(line)
+ *  }
+ * }
+ * csv.checkpoint(checkpoint)
+ * ...
+ * FollowCSVReader csv=FollowCSVReader.resume(file, checkpoint)
+ * </pre>
+ * The reader knows the offset in the file after the last record it has
+ * returned, and how many records it has returned. A checkpoint saves both,
+ * and resuming from it continues after that record without reading the
+ * file from the start.
+ * <p>
+ * The file is read as by MappedCSVReader, in an encoding where ASCII
+ * characters are single bytes that do not occur in other characters. */
+public class FollowCSVReader implements Closeable{
+
+	// Constants ----------------------------------------------
+
+	/** Start of a checkpoint file: "CSVF". */
+	private static final int MAGIC=0x43535646;
+
+	/** First wait of await(), in nanoseconds. */
+	private static final long MIN_BACKOFF=TimeUnit.MILLISECONDS.toNanos(1);
+
+	/** States of finding the ends of records. */
+	private static final int START=0;//at the start of a field
+	private static final int UNQUOTED=1;//in a field without delimiters
+	private static final int QUOTED=2;//in a delimited field
+	private static final int AFTER_QUOTE=3;//after a delimiter in a delimited field
+	private static final int CR=4;//after CR, which may be followed by LF
+
+	// State ----------------------------------------------
+
+	private final FileChannel channel;
+
+	/** Reads the complete records. */
+	private final MappedCSVReader reader;
+
+	private char delimiter='"';
+	private char separator=',';
+
+	/** Longest wait of await(), in nanoseconds. */
+	private long maxBackoff=TimeUnit.SECONDS.toNanos(1);
+
+	/** Number of records returned. */
+	private long count;
+
+	/** Offset after the last complete record that has been found. */
+	private long complete;
+
+	/** Offset up to which the file has been looked at. */
+	private long scanned;
+
+	/** State of finding the ends of records, at scanned. */
+	private int state=START;
+
+	/** For looking at new bytes of the file. */
+	private final ByteBuffer bytes=ByteBuffer.allocate(64*1024);
+
+	// Constructors ----------------------------------------------
+
+	/** Follows a file in UTF-8 from its start. */
+	public FollowCSVReader(File file)throws IOException{
+		this(file, StandardCharsets.UTF_8, 0, 0);
+	}
+
+	/** Follows a file from an offset.
+	 * @param charset UTF-8, US-ASCII, or ISO-8859-1
+	 * @param offset the start of a record
+	 * @param count how many records come before the offset */
+	public FollowCSVReader(File file, Charset charset, long offset, long count)throws IOException{
+		if(offset<0 || count<0)
+			throw new IllegalArgumentException(offset + " " + count);
+		channel=FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try{
+			if(channel.size()<offset)
+				throw new IOException("The file is shorter than " + offset);
+			reader=new MappedCSVReader(channel, offset, offset, charset, MappedCSVReader.WINDOW);
+		}catch(IOException | RuntimeException e){
+			channel.close();
+			throw e;
+		}
+		this.count=count;
+		this.complete=offset;
+		this.scanned=offset;
+	}
+
+	/** Follows a file in UTF-8 from a checkpoint.
+	 * @param checkpoint written by checkpoint() */
+	public static FollowCSVReader resume(File file, File checkpoint)throws IOException{
+		return resume(file, StandardCharsets.UTF_8, checkpoint);
+	}
+
+	/** Follows a file from a checkpoint.
+	 * @param charset UTF-8, US-ASCII, or ISO-8859-1
+	 * @param checkpoint written by checkpoint() */
+	public static FollowCSVReader resume(File file, Charset charset, File checkpoint)throws IOException{
+		DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(checkpoint)));
+		try{
+			if(in.readInt()!=MAGIC)
+				throw new IOException("Not a checkpoint: " + checkpoint);
+			long offset=in.readLong();
+			long count=in.readLong();
+			return new FollowCSVReader(file, charset, offset, count);
+		}finally{
+			in.close();
+		}
+	}
+
+	// Configuration methods ------------------------------------------
+
+	/** Sets the field delimiter, before reading.
+	 * Accepts '"' and '\''. */
+	public void setDelimiter(char delimiter){
+		reader.setDelimiter(delimiter);
+		this.delimiter=delimiter;
+	}
+
+	/** Sets the field separator, before reading.
+	 * Accepts ',' and ';' and ':' and TAB and SPACE. */
+	public void setSeparator(char separator){
+		reader.setSeparator(separator);
+		this.separator=separator;
+	}
+
+	/** Sets strict mode. See CSVReader.setStrict(). */
+	public void setStrict(boolean strict){reader.setStrict(strict);}
+
+	/** Declares the types of the columns for next(). See CSVReader.setSchema(). */
+	public void setSchema(ColumnType... schema){reader.setSchema(schema);}
+
+	/** Sets the longest wait between two looks at the file in await().
+	 * The default is one second. */
+	public void setMaxBackoff(long time, TimeUnit unit){
+		if(time<=0)
+			throw new IllegalArgumentException(time+"");
+		maxBackoff=unit.toNanos(time);
+	}
+
+	// Accessors ------------------------------------------
+
+	/** How many records have been returned, including those before
+	 * the offset where following started? */
+	public long getCount(){return count;}
+
+	/** Offset in the file after the last record that has been returned. */
+	public long getOffset(){return reader.getOffset();}
+
+	// Business methods ------------------------------------------
+
+	/** Reads the next complete record, without blocking.
+	 * See CSVReader.readln().
+	 * @return the record, or null if there is no complete record yet
+	 * @exception IOException The file has become shorter. */
+	public Object[] readln()throws IOException{
+		if(!available())
+			return null;
+		Object[] record=reader.readln();
+		count++;
+		return record;
+	}
+
+	/** Reads the next complete record into a reusable record, without blocking.
+	 * See CSVReader.next().
+	 * @return the record, or null if there is no complete record yet
+	 * @exception IOException The file has become shorter. */
+	public CSVRecord next()throws IOException{
+		if(!available())
+			return null;
+		CSVRecord record=reader.next();
+		count++;
+		return record;
+	}
+
+	/** Waits until there is a complete record, looking at the file after
+	 * 1 millisecond, then 2, 4, and so on up to the maximal backoff.
+	 * @return true if there is a complete record, false after the timeout
+	 * @exception InterruptedIOException The thread has been interrupted. */
+	public boolean await(long timeout, TimeUnit unit)throws IOException{
+		long deadline=System.nanoTime()+unit.toNanos(timeout);
+		long backoff=MIN_BACKOFF;
+		while(!available()){
+			long left=deadline-System.nanoTime();
+			if(left<=0)
+				return false;
+			try{
+				TimeUnit.NANOSECONDS.sleep(Math.min(backoff, left));
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			backoff=Math.min(2*backoff, maxBackoff);
+		}
+		return true;
+	}
+
+	/** Saves the offset and the count in a checkpoint file, for resume().
+	 * Replaces the file atomically, where the file system can. */
+	public void checkpoint(File checkpoint)throws IOException{
+		File temporary=new File(checkpoint.getPath() + ".tmp");
+		DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+		try{
+			out.writeInt(MAGIC);
+			out.writeLong(getOffset());
+			out.writeLong(count);
+		}finally{
+			out.close();
+		}
+		try{
+			Files.move(temporary.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}catch(IOException e){
+			Files.move(temporary.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/** Closes the file. */
+	@Override public void close()throws IOException{reader.close();}
+
+	// Helpers ---------------------------------------------------------------
+
+	/** Is there a complete record that has not been returned?
+	 * The file is mapped, so first checks that it has not become shorter. */
+	private boolean available()throws IOException{
+		long size=channel.size();
+		if(size<scanned)
+			throw new IOException("The file has become shorter");
+		if(reader.getOffset()<complete)
+			return true;
+		scan(size);
+		return reader.getOffset()<complete;
+	}
+
+	/** Looks at the bytes that have been appended, for the ends of records.
+	 * @param size the size of the file */
+	private void scan(long size)throws IOException{
+		while(scanned<size){
+			bytes.clear();
+			int n=channel.read(bytes, scanned);
+			if(n<=0)
+				break;
+			for(int i=0; i<n; i++)
+				step(bytes.get(i), scanned+i);
+			scanned+=n;
+		}
+		if(reader.getEnd()<complete)
+			reader.setEnd(complete);
+	}
+
+	/** Looks at one byte, and notes where a record ends.
+	 * Finds the ends of records as MappedCSVReader does.
+	 * @param at the offset of the byte */
+	private void step(byte b, long at){
+		switch(state){
+		case UNQUOTED:
+			if(b==separator)state=START;
+			else if(b=='\n')end(at+1);
+			else if(b=='\r')state=CR;
+			return;
+		case QUOTED:
+			if(b==delimiter)state=AFTER_QUOTE;
+			return;
+		case AFTER_QUOTE:
+			if(b==delimiter)state=QUOTED;//escaped delimiter
+			else if(b==separator)state=START;
+			else if(b=='\n')end(at+1);
+			else if(b=='\r')state=CR;
+			else{
+				//Bad CSV: the record ends after the final delimiter.
+				end(at);
+				start(b, at);
+			}
+			return;
+		case CR:
+			if(b=='\n')
+				end(at+1);
+			else{
+				end(at);
+				start(b, at);
+			}
+			return;
+		default:
+			start(b, at);
+		}
+	}
+
+	/** Looks at a byte at the start of a field. */
+	private void start(byte b, long at){
+		if(b==delimiter)state=QUOTED;
+		else if(b==separator)state=START;
+		else if(b=='\n')end(at+1);
+		else if(b=='\r')state=CR;
+		else state=UNQUOTED;
+	}
+
+	/** A record ends before this offset. */
+	private void end(long offset){
+		complete=offset;
+		state=START;
+	}
+}
@@ -0,0 +1,361 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/** Reads a gzip file, decompressing it in another thread, so that
+ * decompressing and parsing happen at the same time:
+ * <pre>
+ * CSVReader csv=new CSVReader(new GzipReader(file))
+ * </pre>
+ * A background thread decompresses and decodes the file into chunks of
+ * characters, and hands them to the reader through a bounded queue.
+ * <p>
+ * If the file is made of gzip blocks that say how long they are (BGZF),
+ * as BlockGzipOutputStream writes them, the blocks are decompressed in
+ * parallel in a ForkJoinPool. Other gzip files, also with several members,
+ * are decompressed sequentially in the background thread.
+ * <p>
+ * Not threadsafe. */
+public class GzipReader extends Reader{
+
+	// Constants ----------------------------------------------
+
+	/** Chars per chunk. */
+	private static final int CHUNK=64*1024;
+
+	/** Chunks in the queue. */
+	private static final int QUEUE=16;
+
+	/** Marks the end of input in the queue. */
+	private static final char[] END=new char[0];
+
+	// State ----------------------------------------------
+
+	private final File file;
+
+	private final Charset charset;
+
+	/** Where to decompress BGZF blocks. */
+	private final ForkJoinPool pool;
+
+	/** Did this reader make the pool? Then close() shuts it down. */
+	private final boolean ownPool;
+
+	/** Chunks of decompressed chars. */
+	private final BlockingQueue<char[]> queue=new ArrayBlockingQueue<char[]>(QUEUE);
+
+	/** Why the background thread has failed, or null. */
+	private volatile IOException failure;
+
+	/** Decompresses and decodes. */
+	private final Thread thread;
+
+	/** The chunk that the reader is reading, or null. */
+	private char[] chunk;
+
+	/** Index of the next char in the chunk. */
+	private int position;
+
+	// Constructors ----------------------------------------------
+
+	/** Reads a gzip file in UTF-8. */
+	public GzipReader(File file)throws IOException{this(file, StandardCharsets.UTF_8, null);}
+
+	/** Reads a gzip file.
+	 * @param pool Where to decompress BGZF blocks. If null, makes a new
+	 * 	ForkJoinPool and shuts it down on close(). */
+	public GzipReader(File file, Charset charset, ForkJoinPool pool)throws IOException{
+		if(!file.canRead())
+			throw new IOException("Cannot read " + file);
+		this.file=file;
+		this.charset=charset;
+		this.ownPool= pool==null;
+		this.pool= pool==null ? new ForkJoinPool() : pool;
+		thread=new Thread(new Runnable(){
+			@Override public void run(){produce();}
+		}, "GzipReader");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Business methods ------------------------------------------
+
+	@Override public int read(char[] cbuf, int off, int len)throws IOException{
+		if(len==0)
+			return 0;
+		if(chunk==null || position==chunk.length){
+			if(chunk!=END){
+				chunk=take();
+				position=0;
+			}
+			if(chunk==END){
+				if(failure!=null)
+					throw failure;//again on every call
+				return -1;
+			}
+		}
+		int n=Math.min(len, chunk.length-position);
+		System.arraycopy(chunk, position, cbuf, off, n);
+		position+=n;
+		return n;
+	}
+
+	/** Stops decompressing and closes the file. */
+	@Override public void close()throws IOException{
+		thread.interrupt();
+		queue.clear();
+		if(ownPool)
+			pool.shutdownNow();
+		chunk=END;
+	}
+
+	// Helpers ---------------------------------------------------------------
+
+	/** Takes the next chunk from the queue. */
+	private char[] take()throws IOException{
+		try{
+			return queue.take();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/** The background thread: decompresses, decodes, and puts chunks
+	 * into the queue. */
+	private void produce(){
+		InputStream in=null;
+		boolean closed=false;
+		try{
+			in=new BufferedInputStream(new FileInputStream(file), CHUNK);
+			in= bgzf(in) ? new BlockInputStream(in) : new GZIPInputStream(in, CHUNK);
+			Reader reader=new InputStreamReader(in, charset);
+			while(true){
+				char[] chunk=new char[CHUNK];
+				int n=0;
+				int r=0;
+				while(n<CHUNK && 0<=(r=reader.read(chunk, n, CHUNK-n)))
+					n+=r;
+				if(0<n)
+					queue.put(n==CHUNK ? chunk : Arrays.copyOf(chunk, n));
+				if(r<0)
+					break;
+			}
+		}catch(InterruptedException e){
+			closed=true;
+		}catch(IOException e){
+			failure=e;
+		}catch(Throwable e){
+			failure=new IOException(e);
+		}finally{
+			close(in);
+			if(!closed){
+				//Always, so that the reader does not wait forever.
+				try{
+					queue.put(END);
+				}catch(InterruptedException e){}
+			}
+		}
+	}
+
+	private static void close(InputStream in){
+		if(in!=null){
+			try{
+				in.close();
+			}catch(IOException e){}
+		}
+	}
+
+	/** Does the stream start with a BGZF block? Leaves the stream where it was. */
+	private static boolean bgzf(InputStream in)throws IOException{
+		in.mark(BlockGzipOutputStream.HEADER);
+		byte[] header=new byte[BlockGzipOutputStream.HEADER];
+		int n=0;
+		int r=0;
+		while(n<header.length && 0<=(r=in.read(header, n, header.length-n)))
+			n+=r;
+		in.reset();
+		return n==header.length && blockSize(header)!=0;
+	}
+
+	/** The size of a BGZF block from its header, or 0 if it is not BGZF. */
+	private static int blockSize(byte[] header){
+		boolean bgzf= (header[0]&0xff)==0x1f && (header[1]&0xff)==0x8b && header[2]==8
+			&& header[3]==4 && header[10]==6 && header[11]==0
+			&& header[12]=='B' && header[13]=='C' && header[14]==2 && header[15]==0;
+		if(!bgzf)
+			return 0;
+		return ((header[16]&0xff) | (header[17]&0xff)<<8) + 1;
+	}
+
+	/** Inflates one BGZF block. */
+	private static byte[] inflate(byte[] block)throws IOException{
+		int length=block.length;
+		int t=length-BlockGzipOutputStream.TRAILER;
+		int crc=(block[t]&0xff) | (block[t+1]&0xff)<<8 | (block[t+2]&0xff)<<16 | (block[t+3]&0xff)<<24;
+		int size=(block[t+4]&0xff) | (block[t+5]&0xff)<<8 | (block[t+6]&0xff)<<16 | (block[t+7]&0xff)<<24;
+		byte[] bytes=new byte[size];
+		Inflater inflater=new Inflater(true);
+		try{
+			inflater.setInput(block, BlockGzipOutputStream.HEADER, t-BlockGzipOutputStream.HEADER);
+			int n=0;
+			while(n<size && !inflater.finished())
+				n+=inflater.inflate(bytes, n, size-n);
+			if(n!=size)
+				throw new ZipException("Bad BGZF block size");
+		}catch(DataFormatException e){
+			throw new ZipException(e.getMessage());
+		}finally{
+			inflater.end();
+		}
+		CRC32 check=new CRC32();
+		check.update(bytes, 0, size);
+		if((int)check.getValue()!=crc)
+			throw new ZipException("Bad BGZF block CRC");
+		return bytes;
+	}
+
+	/** Reads BGZF blocks and inflates them in the pool, some blocks ahead,
+	 * and delivers their bytes in order. */
+	private class BlockInputStream extends InputStream{
+
+		private final DataInputStream in;
+
+		/** Blocks being inflated, in order. */
+		private final ArrayDeque<Future<byte[]>> pending=new ArrayDeque<Future<byte[]>>();
+
+		/** Are there more blocks in the file? */
+		private boolean more=true;
+
+		/** The current inflated block. */
+		private byte[] bytes=new byte[0];
+
+		private int position=0;
+
+		BlockInputStream(InputStream in){this.in=new DataInputStream(in);}
+
+		@Override public int read()throws IOException{
+			byte[] b=new byte[1];
+			return read(b, 0, 1)<0 ? -1 : b[0]&0xff;
+		}
+
+		@Override public int read(byte[] b, int off, int len)throws IOException{
+			while(position==bytes.length){
+				if(!next())
+					return -1;
+			}
+			int n=Math.min(len, bytes.length-position);
+			System.arraycopy(bytes, position, b, off, n);
+			position+=n;
+			return n;
+		}
+
+		@Override public void close()throws IOException{
+			for(Future<byte[]> f : pending)
+				f.cancel(true);
+			in.close();
+		}
+
+		/** Goes to the next inflated block.
+		 * @return false at the end */
+		private boolean next()throws IOException{
+			int ahead=2*pool.getParallelism();
+			while(more && pending.size()<ahead){
+				final byte[] block=block();
+				if(block==null)
+					more=false;
+				else
+					pending.add(pool.submit(new Callable<byte[]>(){
+						@Override public byte[] call()throws IOException{return inflate(block);}
+					}));
+			}
+			if(pending.isEmpty())
+				return false;
+			bytes=get(pending.remove());
+			position=0;
+			return true;
+		}
+
+		/** Reads the next compressed block, or null at the end. */
+		private byte[] block()throws IOException{
+			byte[] header=new byte[BlockGzipOutputStream.HEADER];
+			int first=in.read();
+			if(first<0)
+				return null;
+			header[0]=(byte)first;
+			in.readFully(header, 1, header.length-1);
+			int size=blockSize(header);
+			if(size==0)
+				throw new ZipException("Not a BGZF block");
+			byte[] block=Arrays.copyOf(header, size);
+			try{
+				in.readFully(block, header.length, size-header.length);
+			}catch(EOFException e){
+				throw new ZipException("Truncated BGZF block");
+			}
+			return block;
+		}
+	}
+
+	/** Gets the result of a task, unwrapping its exception. */
+	private static <T> T get(Future<T> future)throws IOException{
+		try{
+			return future.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}catch(ExecutionException e){
+			Throwable cause=e.getCause();
+			//ForkJoinPool wraps the exceptions of a Callable
+			while(cause.getClass()==RuntimeException.class && cause.getCause()!=null)
+				cause=cause.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException(cause);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.util.Arrays;
+
+/** The column names of a CSV file, from its first record.
+ * <p>
+ * Immutable. Finds the index of a column by name in a hash table that
+ * is built once, so that there usually is no probing at all. The names
+ * are interned, so that looking up a literal usually only compares
+ * references. If two columns have the same name, the first one wins. */
+public final class Header{
+
+	// Constants ----------------------------------------------
+
+	/** How many multipliers to try before growing the table. */
+	private static final int ATTEMPTS=8;
+
+	// State ----------------------------------------------
+
+	/** The names by column index. */
+	private final String[] names;
+
+	/** The names by hash slot, or null. */
+	private final String[] table;
+
+	/** The column index of the name in each slot. */
+	private final int[] indexes;
+
+	/** Multiplier of the hash code. */
+	private final int multiplier;
+
+	/** Number of bits of a slot. */
+	private final int bits;
+
+	// Constructor ----------------------------------------
+
+	/** @param names the fields of the first record */
+	Header(String[] names){
+		this.names=new String[names.length];
+		for(int i=0; i<names.length; i++)
+			this.names[i]=names[i].intern();
+
+		//Try multipliers until no two names share a slot,
+		//growing the table now and then. If that fails, probe.
+		int bits=1;
+		while((1<<bits) < 2*names.length)
+			bits++;
+		int multiplier=0x9E3779B9;
+		for(int attempt=1; !perfect(bits, multiplier) && attempt<4*ATTEMPTS; attempt++){
+			if(attempt%ATTEMPTS==0)
+				bits++;
+			multiplier+=0x6A09E666;
+			multiplier|=1;
+		}
+		this.bits=bits;
+		this.multiplier=multiplier;
+		table=new String[1<<bits];
+		indexes=new int[1<<bits];
+		for(int i=0; i<names.length; i++){
+			String name=this.names[i];
+			int slot=slot(name);
+			while(table[slot]!=null && !table[slot].equals(name))
+				slot=(slot+1) & (table.length-1);
+			if(table[slot]==null){
+				table[slot]=name;
+				indexes[slot]=i;
+			}
+		}
+	}
+
+	// Accessors ------------------------------------------
+
+	/** How many columns? */
+	public int size(){return names.length;}
+
+	/** The name of a column. */
+	public String getName(int column){return names[column];}
+
+	/** The index of the column with this name, or -1. */
+	public int indexOf(String name){
+		int slot=slot(name);
+		String s=table[slot];
+		while(s!=null){
+			if(s==name || s.equals(name))
+				return indexes[slot];
+			slot=(slot+1) & (table.length-1);
+			s=table[slot];
+		}
+		return -1;
+	}
+
+	@Override public String toString(){return Arrays.toString(names);}
+
+	// Helpers --------------------------------------------
+
+	private int slot(String name){
+		return (name.hashCode() * multiplier) >>> (32-bits);
+	}
+
+	/** Would this table have no two different names in the same slot? */
+	private boolean perfect(int bits, int multiplier){
+		String[] table=new String[1<<bits];
+		for(String name : names){
+			int slot=(name.hashCode() * multiplier) >>> (32-bits);
+			if(table[slot]!=null && !table[slot].equals(name))
+				return false;
+			table[slot]=name;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,70 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Counts durations in buckets by powers of two of nanoseconds:
+ * bucket i counts durations from 2^i to 2^(i+1) nanoseconds.
+ * <p>
+ * One thread records, and any thread may read. */
+public final class Histogram{
+
+	/** Number of buckets. */
+	public static final int BUCKETS=64;
+
+	private final AtomicLongArray buckets=new AtomicLongArray(BUCKETS);
+
+	/** Number of durations recorded. Only the recording thread writes it. */
+	private volatile long count=0;
+
+	// Accessors ------------------------------------------
+
+	/** How many durations have been recorded? */
+	public long getCount(){return count;}
+
+	/** How many durations in a bucket? */
+	public long getCount(int bucket){return buckets.get(bucket);}
+
+	/** An upper bound of the given fraction of the durations:
+	 * the end of the bucket where that fraction is reached.
+	 * @param fraction between 0 and 1, for example 0.99
+	 * @return nanoseconds, or 0 if nothing has been recorded */
+	public long getPercentile(double fraction){
+		long target=(long)Math.ceil(fraction*count);
+		long sum=0;
+		for(int i=0; i<BUCKETS; i++){
+			sum+=buckets.get(i);
+			if(0<sum && target<=sum)
+				return i==BUCKETS-1 ? Long.MAX_VALUE : 1L<<(i+1);
+		}
+		return 0;
+	}
+
+	@Override public String toString(){
+		return "Histogram[count=" + count + ", p50<=" + getPercentile(0.5) + "ns, p99<=" + getPercentile(0.99) + "ns]";
+	}
+
+	// Package methods ------------------------------------
+
+	/** Records a duration. Only from one thread. */
+	void record(long nanos){
+		int bucket= nanos<=1 ? 0 : 63-Long.numberOfLeadingZeros(nanos);
+		buckets.lazySet(bucket, buckets.get(bucket)+1);
+		count++;
+	}
+}
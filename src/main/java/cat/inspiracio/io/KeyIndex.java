@@ -0,0 +1,325 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Index of a CSV file by the values of one column, for looking up rows
+ * by key without reading the file.
+ * <p>
+ * The index holds the keys sorted, each with the offset in the file of its
+ * record. A lookup finds the key by binary search, and reads the record
+ * with a MappedCSVReader positioned at its offset. Recently looked-up
+ * records are kept in a small LRU cache.
+ * <pre>
+ * KeyIndex index=KeyIndex.build(new MappedCSVReader(file), 0)
+ * index.write(sidecar)
+ * ...
+ * KeyIndex index=KeyIndex.read(sidecar)
+ * MappedCSVReader csv=new MappedCSVReader(file)
+ * Object[] product=index.get(csv, "B0012345")
+ * </pre>
+ * If several records have the same key, the lookup finds the first.
+ * A header record is indexed like any other.
+ * <p>
+ * If the file is only appended to, update() indexes the new records,
+ * without reading the file again.
+ * <p>
+ * A KeyIndex is not thread-safe. */
+public final class KeyIndex{
+
+	// Constants ----------------------------------------------
+
+	/** Start of a sidecar file: "CSVK". */
+	private static final int MAGIC=0x4353564B;
+
+	/** Default number of records in the cache. */
+	public static final int CACHE=1024;
+
+	// State ----------------------------------------------
+
+	/** The indexed column. */
+	private final int column;
+
+	/** The keys, sorted. */
+	private String[] keys;
+
+	/** Offsets of the records of the keys.
+	 * For the same key, in the order of the file. */
+	private long[] offsets;
+
+	/** How many records are indexed. */
+	private long rows;
+
+	/** Offset after the last indexed record. */
+	private long length;
+
+	/** Recently looked up records, by key. */
+	private Cache cache=new Cache(CACHE);
+
+	// Constructors ----------------------------------------------
+
+	private KeyIndex(int column, String[] keys, long[] offsets, long rows, long length){
+		this.column=column;
+		this.keys=keys;
+		this.offsets=offsets;
+		this.rows=rows;
+		this.length=length;
+	}
+
+	/** Builds the index of a file by reading it once, decoding only the
+	 * key column. Records without the column are not indexed. A last record
+	 * without line terminator may still be being written: it is not indexed
+	 * now, but by update().
+	 * @param reader a new reader of the file, with the separator and the
+	 * 	delimiter of the file. It is consumed but not closed.
+	 * @param column the key column, counting from 0 */
+	public static KeyIndex build(MappedCSVReader reader, int column)throws IOException{
+		if(column<0)
+			throw new IllegalArgumentException(column+"");
+		KeyIndex index=new KeyIndex(column, new String[0], new long[0], 0, reader.getOffset());
+		index.scan(reader);
+		return index;
+	}
+
+	// Accessors ------------------------------------------
+
+	/** The indexed column. */
+	public int getColumn(){return column;}
+
+	/** How many records have been read for the index? */
+	public long getRows(){return rows;}
+
+	/** How many keys are in the index, counting repeated keys repeatedly? */
+	public int size(){return keys.length;}
+
+	/** Offset in the file after the last indexed record. */
+	public long getLength(){return length;}
+
+	/** Keeps so many looked-up records in the cache.
+	 * The default is CACHE.
+	 * @param size how many, or 0 for no cache */
+	public void setCacheSize(int size){
+		if(size<0)
+			throw new IllegalArgumentException(size+"");
+		cache=new Cache(size);
+	}
+
+	// Business methods ------------------------------------------
+
+	/** Offset in the file of the first record with this key, or -1. */
+	public long getOffset(String key){
+		int i=lowerBound(key);
+		return i<keys.length && keys[i].equals(key) ? offsets[i] : -1;
+	}
+
+	/** Looks up the first record with this key, as readln() reads it.
+	 * The result may come from the cache: do not modify it.
+	 * @param reader a reader of the indexed file, with the same separator
+	 * 	and delimiter as when building the index. Its position changes.
+	 * @return the record, or null if there is no record with this key */
+	public Object[] get(MappedCSVReader reader, String key)throws IOException{
+		Object[] record=cache.get(key);
+		if(record!=null)
+			return record;
+		long offset=getOffset(key);
+		if(offset<0)
+			return null;
+		if(reader.getEnd()<length)
+			throw new IOException("The file is shorter than the index");
+		reader.seek(offset);
+		record=reader.readln();
+		if(0<cache.capacity)
+			cache.put(key, record);
+		return record;
+	}
+
+	/** Indexes the records that have been appended to the file since
+	 * building or the last update.
+	 * @param reader a new reader of the file, with the same separator
+	 * 	and delimiter as when building the index. It is consumed but not closed.
+	 * @return how many records have been added
+	 * @exception IOException The file is shorter than the index:
+	 * 	it has not only been appended to, and the index must be built again. */
+	public long update(MappedCSVReader reader)throws IOException{
+		if(reader.getEnd()<length)
+			throw new IOException("The file is shorter than the index");
+		long before=rows;
+		reader.seek(length);
+		scan(reader);
+		return rows-before;
+	}
+
+	/** Writes the index to a sidecar file. */
+	public void write(File file)throws IOException{
+		DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try{
+			out.writeInt(MAGIC);
+			out.writeInt(column);
+			out.writeLong(rows);
+			out.writeLong(length);
+			out.writeInt(keys.length);
+			byte[] previous=new byte[0];
+			for(int i=0; i<keys.length; i++){
+				//front coding: the length of the prefix shared with the previous key, and the rest
+				byte[] key=keys[i].getBytes(StandardCharsets.UTF_8);
+				int shared=0;
+				int max=Math.min(key.length, previous.length);
+				while(shared<max && key[shared]==previous[shared])
+					shared++;
+				RowIndex.writeVarLong(out, shared);
+				RowIndex.writeVarLong(out, key.length-shared);
+				out.write(key, shared, key.length-shared);
+				RowIndex.writeVarLong(out, offsets[i]);
+				previous=key;
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	/** Reads an index from a sidecar file. */
+	public static KeyIndex read(File file)throws IOException{
+		DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			if(in.readInt()!=MAGIC)
+				throw new IOException("Not a key index: " + file);
+			int column=in.readInt();
+			long rows=in.readLong();
+			long length=in.readLong();
+			int n=in.readInt();
+			if(column<0 || rows<0 || n<0 || rows<n)
+				throw new IOException("Bad key index: " + file);
+			String[] keys=new String[n];
+			long[] offsets=new long[n];
+			byte[] previous=new byte[0];
+			for(int i=0; i<n; i++){
+				int shared=(int)RowIndex.readVarLong(in);
+				int rest=(int)RowIndex.readVarLong(in);
+				if(previous.length<shared || rest<0)
+					throw new IOException("Bad key index: " + file);
+				byte[] key=Arrays.copyOf(previous, shared+rest);
+				in.readFully(key, shared, rest);
+				keys[i]=new String(key, StandardCharsets.UTF_8);
+				offsets[i]=RowIndex.readVarLong(in);
+				previous=key;
+			}
+			return new KeyIndex(column, keys, offsets, rows, length);
+		}finally{
+			in.close();
+		}
+	}
+
+	@Override public String toString(){
+		return "KeyIndex[column=" + column + ", keys=" + keys.length + ", rows=" + rows + ", length=" + length + "]";
+	}
+
+	// Helpers ---------------------------------------------------------------
+
+	/** Reads the rest of the file and merges its keys into the index. */
+	private void scan(MappedCSVReader reader)throws IOException{
+		List<Entry> entries=new ArrayList<>();
+		long offset=reader.getOffset();
+		while(reader.skip()){
+			if(!reader.isComplete())
+				break;//the last record is still being written: index it on update
+			rows++;
+			String key=reader.getField(column);
+			if(key!=null)
+				entries.add(new Entry(key, offset));
+			offset=reader.getOffset();
+		}
+		length=offset;
+		if(entries.isEmpty())
+			return;
+		Collections.sort(entries);//stable: same keys stay in file order
+		merge(entries);
+		cache.clear();//a new record may come before a cached one
+	}
+
+	/** Merges new entries, sorted and after all the old ones in the file,
+	 * into the keys and offsets. */
+	private void merge(List<Entry> entries){
+		int n=keys.length;
+		int m=entries.size();
+		String[] keys=new String[n+m];
+		long[] offsets=new long[n+m];
+		int i=0, j=0, k=0;
+		while(i<n || j<m){
+			//For equal keys, the old entry comes first.
+			if(j==m || (i<n && this.keys[i].compareTo(entries.get(j).key)<=0)){
+				keys[k]=this.keys[i];
+				offsets[k++]=this.offsets[i++];
+			}else{
+				Entry entry=entries.get(j++);
+				keys[k]=entry.key;
+				offsets[k++]=entry.offset;
+			}
+		}
+		this.keys=keys;
+		this.offsets=offsets;
+	}
+
+	/** The index of the first key that is not less than this key. */
+	private int lowerBound(String key){
+		int low=0;
+		int high=keys.length;
+		while(low<high){
+			int middle=(low+high)>>>1;
+			if(keys[middle].compareTo(key)<0)
+				low=middle+1;
+			else
+				high=middle;
+		}
+		return low;
+	}
+
+	/** A key and the offset of its record, while building. */
+	private static final class Entry implements Comparable<Entry>{
+		final String key;
+		final long offset;
+		Entry(String key, long offset){this.key=key; this.offset=offset;}
+		@Override public int compareTo(Entry e){return key.compareTo(e.key);}
+	}
+
+	/** Least recently used records, by key. */
+	private static final class Cache extends LinkedHashMap<String, Object[]>{
+		private static final long serialVersionUID=1L;
+		final int capacity;
+		Cache(int capacity){
+			super(16, 0.75f, true);//access order
+			this.capacity=capacity;
+		}
+		@Override protected boolean removeEldestEntry(Map.Entry<String, Object[]> eldest){
+			return capacity<size();
+		}
+	}
+}
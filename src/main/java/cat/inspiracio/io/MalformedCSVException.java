@@ -0,0 +1,40 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.IOException;
+
+/** Signals that the input is not well-formed CSV.
+ * Thrown by a CSVReader in strict mode only. */
+public class MalformedCSVException extends IOException{
+
+	private static final long serialVersionUID = 1L;
+
+	/** Number of the bad record, counting from 1. */
+	private final int record;
+
+	/** @param message What is wrong
+	 * @param record Number of the bad record, counting from 1 */
+	public MalformedCSVException(String message, int record){
+		super(message + " in record " + record);
+		this.record=record;
+	}
+
+	/** Number of the bad record, counting from 1.
+	 * In header mode, the header is record 0. */
+	public int getRecord(){return record;}
+}
@@ -0,0 +1,529 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** Reads CSV records from a file, one at a time, like CSVReader,
+ * but memory-maps the file and parses the bytes directly.
+ * <p>
+ * Separators, delimiters and line terminators are found in the bytes,
+ * and only the fields that are actually requested are decoded into
+ * characters: all of them for readln(), and those whose column is not
+ * SKIP for next(). ASCII bytes are decoded without a CharsetDecoder.
+ * The fields are interpreted exactly as CSVReader interprets them.
+ * <p>
+ * The file must be in an encoding where ASCII characters are single bytes
+ * that do not occur in other characters: UTF-8, US-ASCII, or ISO-8859-1.
+ * <p>
+ * To read any row without reading the rows before it, see RowIndex.
+ * <p>
+ * Example:
+ * <pre>
+ * MappedCSVReader csv=new MappedCSVReader(file)
+ * Object[] line=csv.readln()
+ * while(line!=null){
+ *  process(line)
+ *  line=csv.readln()
+ * }
+ * csv.close()
+ * </pre>
+ * */
+public class MappedCSVReader implements Closeable{
+
+	// Constants ----------------------------------------------
+
+	/** Delimits a field. Can be " or '. 
+	 * Some fields have no delimiters. */
+	private char delimiter='"';
+
+	/** Separates fields. Can be ',' or ';' or ':' or TAB or SPACE. */
+	private char separator=',';
+
+	/** How much of the file is mapped at a time. Grows if a record does not fit. */
+	static final int WINDOW=256*1024*1024;
+
+	//State ------------------------------------------------
+
+	/** number of records already parsed and delivered in readln() or next() */
+	private int count=0;
+
+	/** The file */
+	private final FileChannel channel;
+
+	/** Offset in the file after the last byte to parse. */
+	private long end;
+
+	/** Size of the mapped window. */
+	private final int window;
+
+	/** Window of the file. The bytes between position and limit
+	 * have not been parsed yet. */
+	private MappedByteBuffer bytes;
+
+	/** Offset in the file of the first byte of the window. */
+	private long base;
+
+	/** Index of the next byte to parse in the window. */
+	private int position=0;
+
+	/** Index after the last byte of the window. */
+	private int limit=0;
+
+	/** Index in the window of the start of the current record,
+	 * or -1. Moving the window keeps the bytes from mark on. */
+	private int mark=-1;
+
+	/** Number of fields of the current record. */
+	private int fields=0;
+
+	/** Where the fields of the current record start in the window, relative to mark.
+	 * For delimited fields, just after the starting delimiter. */
+	private int[] starts=new int[16];
+
+	/** Lengths in bytes of the fields, without delimiters and still escaped. */
+	private int[] lengths=new int[16];
+
+	/** Which delimited fields have escaped delimiters? */
+	private boolean[] escaped=new boolean[16];
+
+	/** Decoded fields of the current record. */
+	private char[] chars=new char[1024];
+
+	/** Where the decoded fields start in chars. */
+	private int[] charStarts=new int[16];
+
+	/** Lengths of the decoded fields, in chars. */
+	private int[] charLengths=new int[16];
+
+	/** Decodes the fields that are not ASCII. */
+	private final CharsetDecoder decoder;
+
+	/** View of the window for the decoder. */
+	private ByteBuffer view;
+
+	/** View of chars for the decoder. */
+	private CharBuffer charView=CharBuffer.wrap(chars);
+
+	/** Interprets the fields. */
+	private final FieldParser parser=new FieldParser();
+
+	/** The reusable record returned by next(). */
+	private final CSVRecord record=new CSVRecord(parser);
+
+	/** Has the current record ended before the end of input, or with a
+	 * line terminator that cannot become longer? */
+	private boolean complete=true;
+
+	/** Strict: malformed input throws MalformedCSVException.
+	 * Lenient: malformed input ends the record. */
+	private boolean strict=false;
+
+	//Constructors -----------------------------------------
+
+	/** Reads a file in UTF-8.
+	 * @param file A CSV file */
+	public MappedCSVReader(File file)throws IOException{
+		this(file, StandardCharsets.UTF_8);
+	}
+
+	/** @param file A CSV file
+	 * @param charset UTF-8, US-ASCII, or ISO-8859-1 */
+	public MappedCSVReader(File file, Charset charset)throws IOException{
+		this(FileChannel.open(file.toPath(), StandardOpenOption.READ), 0, -1, charset, WINDOW);
+	}
+
+	/** Reads some bytes of a file.
+	 * @param channel Open channel of the file. Closing this reader closes it.
+	 * @param start Offset of the first record to read
+	 * @param end Offset after the last byte to read, or -1 for the end of the file
+	 * @param charset UTF-8, US-ASCII, or ISO-8859-1
+	 * @param window Maximal size of the mapped window, normally WINDOW */
+	MappedCSVReader(FileChannel channel, long start, long end, Charset charset, int window)throws IOException{
+		if(!StandardCharsets.UTF_8.equals(charset) && !StandardCharsets.US_ASCII.equals(charset) && !StandardCharsets.ISO_8859_1.equals(charset))
+			throw new IllegalArgumentException(charset.name());
+		this.channel=channel;
+		this.base=start;
+		this.end= end<0 ? channel.size() : end;
+		this.window=window;
+		this.decoder=charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	//Accessors -------------------------------------------
+
+	/** Sets the field delimiter.
+	 * Accepts '"' and '\''. */
+	public void setDelimiter(char delimiter){
+		if(delimiter!='"' && delimiter!='\'')
+			throw new IllegalArgumentException();
+		this.delimiter=delimiter;
+	}
+
+	/** Sets the field separator.
+	 * Accepts ',' and ';' and ':' and TAB and SPACE. */
+	public void setSeparator(char separator){
+		if(separator!=',' && separator!=';' && separator!=':' && separator!='\t' && separator!=' ')
+			throw new IllegalArgumentException();
+		this.separator=separator;
+	}
+
+	/** Sets strict mode. See CSVReader.setStrict(). */
+	public void setStrict(boolean strict){this.strict=strict;}
+
+	/** Declares the types of the columns for next().
+	 * Columns without declared type are STRING. SKIP columns are not decoded.
+	 * @param schema the type of each column, or nothing to forget the schema */
+	public void setSchema(ColumnType... schema){record.setSchema(schema);}
+
+	/** How many records have been read? */
+	public int getCount(){return count;}
+
+	//Methods ---------------------------------------------
+
+	/** Reads (parses) one more record from the CSV file.
+	 * See CSVReader.readln().
+	 * @return array of the fields, or null if there are no more records
+	 *  The array contains: String, Number, Boolean, null.
+	 * @throws IOException
+	 * */
+	public Object[] readln() throws IOException{
+		if(!scan())
+			return null;
+		decode(false);
+		Object[] record=new Object[fields];
+		for(int i=0; i<fields; i++)
+			record[i]=parser.parse(chars, charStarts[i], charLengths[i]);
+		return record;
+	}
+
+	/** Reads (parses) one more record from the CSV file into a reusable
+	 * record. See CSVReader.next().
+	 * <p>
+	 * The fields of SKIP columns are not decoded and are "" in the record.
+	 * @return the record, or null if there are no more records
+	 * @throws IOException
+	 * */
+	public CSVRecord next() throws IOException{
+		if(!scan())
+			return null;
+		decode(true);
+		record.set(chars, 0, charStarts, charLengths, fields);
+		if(strict)
+			record.verify(count);
+		return record;
+	}
+
+	/** Closes the file. */
+	@Override public void close()throws IOException{
+		channel.close();
+		bytes=null;
+		view=null;
+	}
+
+	//Package methods -------------------------------------
+
+	/** Offset in the file of the next record. */
+	long getOffset(){return base+position;}
+
+	/** Offset in the file after the last byte to parse. */
+	long getEnd(){return end;}
+
+	/** Parses more of the file, up to this offset, which must be the end
+	 * of a record. */
+	void setEnd(long end){this.end=end;}
+
+	/** Skips one record, finding where it ends without decoding it,
+	 * and without counting it.
+	 * @return false at end of input */
+	boolean skip()throws IOException{
+		if(!scan())
+			return false;
+		count--;
+		return true;
+	}
+
+	/** Is the record that has just been scanned complete? At the end of
+	 * input, a record is incomplete without line terminator, or with CR
+	 * alone, because the file may still grow. */
+	boolean isComplete(){return complete;}
+
+	/** Decodes one field of the record that has just been scanned by skip(),
+	 * without interpreting it.
+	 * @return the text, or null if the record does not have this column */
+	String getField(int column)throws IOException{
+		if(mark<0 || fields<=column)
+			return null;
+		int length=lengths[column];
+		if(chars.length<length){
+			chars=new char[Math.max(length, 2*chars.length)];
+			charView=CharBuffer.wrap(chars);
+		}
+		length=decode(mark+starts[column], length, 0);
+		if(escaped[column])
+			length=unescape(0, length);
+		return new String(chars, 0, length);
+	}
+
+	/** Continues reading at an offset in the file, which must be the start
+	 * of a record. Forgets the window. */
+	void seek(long offset){
+		base=offset;
+		position=0;
+		limit=0;
+		mark=-1;
+		bytes=null;
+		view=null;
+	}
+
+	//Helpers ----------------------------------------------
+
+	/** Scans one record in the window: after this, the fields are
+	 * at mark+starts[i] with lengths[i] bytes, still escaped.
+	 * @return false at end of input */
+	private boolean scan()throws IOException{
+		mark=-1;//forget the previous record
+		if(eof())
+			return false;
+
+		//Scan all the fields of one record
+		mark=position;
+		fields=0;
+		do{
+			if(!scanField())
+				break;
+		}while(read(separator));//at the end of the record, there is no separator
+
+		//Maybe read trailing line terminator
+		if(!readRecordSeparator()){
+			complete=!eof();
+			if(strict && complete)
+				throw malformed("Expected separator or end of line");
+		}
+
+		count++;
+		return true;
+	}
+
+	/** Maps more of the file.
+	 * <p>
+	 * Should only be called when all bytes in the window have been parsed.
+	 * Moves the window to start at mark, or at position if there is no mark,
+	 * and grows it if the bytes from mark on fill most of it.
+	 * @return false at end of input */
+	private boolean fill()throws IOException{
+		if(end<=base+limit)
+			return false;
+		int from= 0<=mark ? mark : position;
+		long kept=limit-from;
+		long size=Math.min(end-(base+from), Math.max(window, 2*kept));
+		if(Integer.MAX_VALUE<size)
+			throw malformed("Record too long");
+		base+=from;
+		bytes=channel.map(MapMode.READ_ONLY, base, size);
+		view=bytes.duplicate();
+		limit=(int)size;
+		position-=from;
+		if(0<=mark)mark=0;
+		return true;
+	}
+
+	/** Returns the next byte without consuming it, or -1 at end of input. */
+	private int peek()throws IOException{
+		if(position==limit && !fill())
+			return -1;
+		return bytes.get(position) & 0xFF;
+	}
+
+	/** Are we at the end of input? */
+	private boolean eof()throws IOException{
+		return position==limit && !fill();
+	}
+
+	/** Reads a certain ASCII character.
+	 * If the input does not start with that character, returns false and leaves position unchanged. */
+	private boolean read(char c) throws IOException{
+		if(peek()!=c)
+			return false;
+		position++;
+		return true;
+	}
+
+	/** Reads the record separator: CR, LF, or CRLF.
+	 * @return false if there is no record separator */
+	private boolean readRecordSeparator()throws IOException{
+		if(read('\n')){
+			complete=true;
+			return true;
+		}
+		if(read('\r')){
+			//CR at the end of input may be the start of CRLF
+			complete= read('\n') || 0<=peek();
+			return true;
+		}
+		return false;
+	}
+
+	/** Notes one more field of the current record.
+	 * @param start relative to mark */
+	private void field(int start, int length, boolean escaped){
+		if(fields==starts.length){
+			starts=Arrays.copyOf(starts, 2*fields);
+			lengths=Arrays.copyOf(lengths, 2*fields);
+			this.escaped=Arrays.copyOf(this.escaped, 2*fields);
+			charStarts=Arrays.copyOf(charStarts, 2*fields);
+			charLengths=Arrays.copyOf(charLengths, 2*fields);
+		}
+		starts[fields]=start;
+		lengths[fields]=length;
+		this.escaped[fields]=escaped;
+		fields++;
+	}
+
+	/** Scans one field. See CSVReader.scanField(). */
+	private boolean scanField()throws IOException{
+		if(peek()==delimiter)
+			return scanDelimitedField();
+		int start=position-mark;
+		while(position<limit || fill()){
+			//tight loop on locals until the end of the window
+			MappedByteBuffer bytes=this.bytes;
+			char separator=this.separator;
+			int i=position;
+			int limit=this.limit;
+			while(i<limit){
+				byte b=bytes.get(i);
+				if(b==separator || b=='\r' || b=='\n')
+					break;
+				i++;
+			}
+			position=i;
+			if(i<limit)
+				break;
+		}
+		field(start, position-mark-start, false);
+		return true;
+	}
+
+	/** Scans a delimited field, without unescaping it.
+	 * See CSVReader.scanDelimitedField(). */
+	private boolean scanDelimitedField()throws IOException{
+		read(delimiter);
+		int start=position-mark;
+		boolean escapes=false;
+		while(true){
+			if(position==limit && !fill()){
+				//In fact, the CSV file is bad.
+				if(strict)
+					throw malformed("Missing final delimiter");
+				return false;
+			}
+			if(bytes.get(position)!=delimiter){
+				position++;
+				continue;
+			}
+			//a delimiter: escaped or the end?
+			position++;
+			if(peek()!=delimiter)
+				break;//past the final delimiter
+			escapes=true;
+			position++;
+		}
+		field(start, position-1-mark-start, escapes);
+		return true;
+	}
+
+	/** Decodes the fields of the current record into chars.
+	 * @param schema Skip the fields of SKIP columns? */
+	private void decode(boolean schema)throws IOException{
+		//A byte never decodes to more than one char, except 4-byte UTF-8 to 2 chars.
+		int n=position-mark;
+		if(chars.length<n){
+			chars=new char[Math.max(n, 2*chars.length)];
+			charView=CharBuffer.wrap(chars);
+		}
+		int at=0;
+		for(int i=0; i<fields; i++){
+			charStarts[i]=at;
+			if(schema && record.getType(i)==ColumnType.SKIP){
+				charLengths[i]=0;
+				continue;
+			}
+			int length=decode(mark+starts[i], lengths[i], at);
+			if(escaped[i])
+				length=unescape(at, length);
+			charLengths[i]=length;
+			at+=length;
+		}
+	}
+
+	/** Decodes some bytes of the window into chars.
+	 * @return number of chars */
+	private int decode(int start, int length, int at)throws IOException{
+		for(int i=0; i<length; i++){
+			byte b=bytes.get(start+i);
+			if(b<0)
+				return i + decodeCharset(start+i, length-i, at+i);
+			chars[at+i]=(char)b;
+		}
+		return length;
+	}
+
+	/** Decodes some bytes that are not all ASCII with the charset.
+	 * @return number of chars */
+	private int decodeCharset(int start, int length, int at)throws IOException{
+		view.limit(start+length).position(start);
+		charView.limit(chars.length).position(at);
+		decoder.reset();
+		decoder.decode(view, charView, true);
+		decoder.flush(charView);
+		return charView.position()-at;
+	}
+
+	/** Replaces escaped delimiters by one delimiter, in place.
+	 * @return the new length */
+	private int unescape(int start, int length){
+		int end=start+length;
+		int w=start;
+		for(int r=start; r<end; r++){
+			char c=chars[r];
+			chars[w++]=c;
+			if(c==delimiter)
+				r++;//skip the second delimiter
+		}
+		return w-start;
+	}
+
+	/** Makes an exception for malformed input in the current record. */
+	private MalformedCSVException malformed(String message){
+		return new MalformedCSVException(message, count+1);
+	}
+}
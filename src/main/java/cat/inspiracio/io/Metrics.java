@@ -0,0 +1,176 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Counters and timings of a CSVReader or a CSVWriter:
+ * <pre>
+ * Metrics metrics=new Metrics()
+ * metrics.setSampling(100)
+ * reader.setMetrics(metrics)
+ * ...
+ * metrics.get(Counter.RECORDS)//from any thread
+ * </pre>
+ * The reader or writer updates the counters once per record. Without
+ * metrics, it only checks once per record that there are none.
+ * Timings are off by default. With sampling n, every n-th record is timed,
+ * and every flush of a writer. In a record that readln() reads and times,
+ * each field is also timed by the type it turns out to have.
+ * <p>
+ * One Metrics is for one reader or writer. That thread updates it,
+ * and any thread may read it. */
+public final class Metrics{
+
+	// State ----------------------------------------------
+
+	private final AtomicLongArray counters=new AtomicLongArray(Counter.values().length);
+
+	/** Sampled timings of records. */
+	private final Histogram records=new Histogram();
+
+	/** Timings of flushes. */
+	private final Histogram flushes=new Histogram();
+
+	/** Sampled timings of interpreting a field, by its type. */
+	private final Histogram[] parses=new Histogram[ColumnType.values().length];
+
+	/** Names of the timings of interpreting a field, for the listener. */
+	private static final String[] PARSES=new String[ColumnType.values().length];
+	static{
+		for(ColumnType type : ColumnType.values())
+			PARSES[type.ordinal()]="parse." + type;
+	}
+
+	{
+		for(int i=0; i<parses.length; i++)
+			parses[i]=new Histogram();
+	}
+
+	/** Time every so many records, or 0 for no timings. */
+	private int sampling=0;
+
+	/** Records until the next timed record. */
+	private int countdown=0;
+
+	private MetricsListener listener;
+
+	// Configuration methods ------------------------------------------
+
+	/** Times every n-th record, and every flush.
+	 * @param n how often, or 0 for no timings (the default) */
+	public void setSampling(int n){
+		if(n<0)
+			throw new IllegalArgumentException(n+"");
+		sampling=n;
+		countdown=n;
+	}
+
+	/** Sets the listener, or null for none. */
+	public void setListener(MetricsListener listener){this.listener=listener;}
+
+	// Accessors ------------------------------------------
+
+	/** Gets the value of a counter. */
+	public long get(Counter counter){return counters.get(counter.ordinal());}
+
+	/** Sampled timings of reading or writing one record. */
+	public Histogram getRecordTimes(){return records;}
+
+	/** Timings of flushes of a writer. */
+	public Histogram getFlushTimes(){return flushes;}
+
+	/** Sampled timings of interpreting a field in readln(), for the fields that
+	 * turned out to have this type: INT, LONG, DOUBLE, BOOLEAN, or STRING.
+	 * Fields that are null are not timed. */
+	public Histogram getParseTimes(ColumnType type){
+		if(type==ColumnType.SKIP)
+			throw new IllegalArgumentException(type+"");
+		return parses[type.ordinal()];
+	}
+
+	@Override public String toString(){
+		StringBuilder builder=new StringBuilder("Metrics[");
+		for(Counter counter : Counter.values()){
+			long value=get(counter);
+			if(value!=0)
+				builder.append(counter).append('=').append(value).append(", ");
+		}
+		return builder.append("records=").append(records).append(", flushes=").append(flushes).append(']').toString();
+	}
+
+	// Package methods ------------------------------------
+
+	/** Sets a counter. Only from one thread. */
+	void set(Counter counter, long value){counters.lazySet(counter.ordinal(), value);}
+
+	/** Adds to a counter. Only from one thread. */
+	void add(Counter counter, long delta){
+		int i=counter.ordinal();
+		counters.lazySet(i, counters.get(i)+delta);
+	}
+
+	/** Should this record be timed? Counts down. */
+	boolean sample(){
+		if(sampling==0)
+			return false;
+		if(--countdown==0){
+			countdown=sampling;
+			return true;
+		}
+		return false;
+	}
+
+	/** Are timings on? */
+	boolean timing(){return sampling!=0;}
+
+	/** Records the timing of a record. */
+	void record(long nanos){
+		records.record(nanos);
+		if(listener!=null)
+			listener.timing("record", nanos);
+	}
+
+	/** Records the timing of interpreting a field. */
+	void parse(Object value, long nanos){
+		if(value==null)
+			return;
+		int type=ColumnType.of(value).ordinal();
+		parses[type].record(nanos);
+		if(listener!=null)
+			listener.timing(PARSES[type], nanos);
+	}
+
+	/** Records the timing of a flush. */
+	void flush(long nanos){
+		flushes.record(nanos);
+		add(Counter.FLUSH_NANOS, nanos);
+		if(listener!=null)
+			listener.timing("flush", nanos);
+	}
+
+	void malformed(MalformedCSVException e){
+		add(Counter.MALFORMED, 1);
+		if(listener!=null)
+			listener.malformed(e);
+	}
+
+	void finished(){
+		if(listener!=null)
+			listener.finished(this);
+	}
+}
@@ -0,0 +1,38 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+/** Hears about what a reader or writer does, for example to pass it
+ * on to a monitoring system. See Metrics.setListener().
+ * <p>
+ * The methods are called in the thread that reads or writes,
+ * so they should be quick. */
+public interface MetricsListener{
+
+	/** A timing, if timings are on.
+	 * @param name "record" for a sampled record, "flush" for a flush
+	 * 	of a writer, or "parse.INT", "parse.LONG", "parse.DOUBLE",
+	 * 	"parse.BOOLEAN", "parse.STRING" for a field of a sampled record
+	 * @param nanos how long it took */
+	default void timing(String name, long nanos){}
+
+	/** A record is malformed. In strict mode, the exception will be thrown. */
+	default void malformed(MalformedCSVException e){}
+
+	/** The reader has reached the end of input, or the writer is closed. */
+	default void finished(Metrics metrics){}
+}
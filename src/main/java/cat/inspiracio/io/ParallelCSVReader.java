@@ -0,0 +1,358 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/** Reads the CSV records of one large file with several threads.
+ * <p>
+ * The file is split into chunks of bytes, and each chunk is parsed by a
+ * MappedCSVReader in a ForkJoinPool. readln() delivers the records
+ * in their original order, or, with setOrdered(false), in the order in
+ * which the chunks finish.
+ * <p>
+ * A chunk must start at the start of a record, but a quoted field may
+ * contain line terminators. Therefore a first parallel pass counts the
+ * delimiters in each chunk. In well-formed CSV, delimiters come in pairs,
+ * so their parity tells whether a chunk starts inside a quoted field.
+ * Then each chunk is moved to start after the first line terminator that
+ * is not inside a quoted field. This requires that delimiters only occur
+ * in delimited fields, as in RFC 4180.
+ * <p>
+ * Only a few chunks are parsed ahead of the consumer, so memory is bounded.
+ * In strict mode, the record number of a MalformedCSVException counts
+ * from the start of the chunk.
+ * <p>
+ * Example:
+ * <pre>
+ * ParallelCSVReader csv=new ParallelCSVReader(file)
+ * Object[] line=csv.readln()
+ * while(line!=null){
+ *  process(line)
+ *  line=csv.readln()
+ * }
+ * csv.close()
+ * </pre>
+ * Not threadsafe: only one thread should call readln().
+ * */
+public class ParallelCSVReader implements Closeable{
+
+	// Constants ----------------------------------------------
+
+	/** Delimits a field. Can be " or '. */
+	private char delimiter='"';
+
+	/** Separates fields. Can be ',' or ';' or ':' or TAB or SPACE. */
+	private char separator=',';
+
+	/** Default size of a chunk in bytes. */
+	private static final long CHUNK_SIZE=32*1024*1024;
+
+	//State ------------------------------------------------
+
+	/** The file. Shared by all chunk readers. */
+	private final FileChannel channel;
+
+	private final Charset charset;
+
+	/** Parses the chunks. */
+	private final ForkJoinPool pool;
+
+	/** Did this reader make the pool? Then close() shuts it down. */
+	private final boolean ownPool;
+
+	private long chunkSize=CHUNK_SIZE;
+
+	private boolean ordered=true;
+
+	private boolean strict=false;
+
+	/** number of records already delivered in readln() */
+	private int count=0;
+
+	/** Offsets of the record-aligned starts of the chunks, and the end of the file.
+	 * Null before the first readln(). */
+	private long[] starts;
+
+	/** Index of the next chunk to submit. */
+	private int next=0;
+
+	/** Chunks submitted and not yet taken, in order of submission.
+	 * Ordered reading takes them from here. In both modes, close() cancels them. */
+	private final ArrayDeque<Future<List<Object[]>>> pending=new ArrayDeque<Future<List<Object[]>>>();
+
+	/** Chunks in order of completion. For unordered reading. */
+	private CompletionService<List<Object[]>> completed;
+
+	/** Number of chunks submitted and not yet taken. */
+	private int running=0;
+
+	/** Records of the current chunk, and index of the next one to deliver. */
+	private List<Object[]> records;
+	private int index=0;
+
+	//Constructors -----------------------------------------
+
+	/** Reads a file in UTF-8, with a new ForkJoinPool. */
+	public ParallelCSVReader(File file)throws IOException{
+		this(file, StandardCharsets.UTF_8, null);
+	}
+
+	/** @param file A CSV file
+	 * @param charset UTF-8, US-ASCII, or ISO-8859-1
+	 * @param pool Where to parse. If null, makes a new ForkJoinPool and
+	 * 	shuts it down at close(). */
+	public ParallelCSVReader(File file, Charset charset, ForkJoinPool pool)throws IOException{
+		this.channel=FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.charset=charset;
+		this.ownPool= pool==null;
+		this.pool= pool==null ? new ForkJoinPool() : pool;
+	}
+
+	//Accessors -------------------------------------------
+
+	/** Sets the field delimiter.
+	 * Accepts '"' and '\''. */
+	public void setDelimiter(char delimiter){
+		if(delimiter!='"' && delimiter!='\'')
+			throw new IllegalArgumentException();
+		this.delimiter=delimiter;
+	}
+
+	/** Sets the field separator.
+	 * Accepts ',' and ';' and ':' and TAB and SPACE. */
+	public void setSeparator(char separator){
+		if(separator!=',' && separator!=';' && separator!=':' && separator!='\t' && separator!=' ')
+			throw new IllegalArgumentException();
+		this.separator=separator;
+	}
+
+	/** Sets strict mode. See CSVReader.setStrict(). */
+	public void setStrict(boolean strict){this.strict=strict;}
+
+	/** Deliver the records in their original order? Default is true.
+	 * If false, delivers the records of each chunk as soon as it is parsed. */
+	public void setOrdered(boolean ordered){this.ordered=ordered;}
+
+	/** Sets the approximate size of a chunk in bytes, at most 2 GB. */
+	public void setChunkSize(long chunkSize){
+		if(chunkSize<1 || Integer.MAX_VALUE<chunkSize)
+			throw new IllegalArgumentException(chunkSize + "");
+		this.chunkSize=chunkSize;
+	}
+
+	/** How many records have been read? */
+	public int getCount(){return count;}
+
+	//Methods ---------------------------------------------
+
+	/** Reads one more record.
+	 * See CSVReader.readln().
+	 * @return array of the fields, or null if there are no more records */
+	public Object[] readln()throws IOException{
+		if(starts==null)
+			start();
+		while(records==null || index==records.size()){
+			if(running==0)
+				return null;
+			records=take();
+			index=0;
+			submit();
+		}
+		count++;
+		return records.get(index++);
+	}
+
+	/** Closes the file, and shuts down the pool if this reader made it. */
+	@Override public void close()throws IOException{
+		for(Future<List<Object[]>> f : pending)
+			f.cancel(true);
+		pending.clear();
+		running=0;
+		if(ownPool)
+			pool.shutdownNow();
+		channel.close();
+	}
+
+	//Package methods -------------------------------------
+
+	/** Number of chunks submitted and not yet taken or cancelled. */
+	int getPending(){return pending.size();}
+
+	//Helpers ----------------------------------------------
+
+	/** Finds the chunks and submits the first ones. */
+	private void start()throws IOException{
+		starts=chunks();
+		if(!ordered)
+			completed=new ExecutorCompletionService<List<Object[]>>(pool);
+		int ahead=2*pool.getParallelism();
+		for(int i=0; i<ahead; i++)
+			submit();
+	}
+
+	/** Splits the file into chunks that start at the start of a record.
+	 * @return offsets of the starts of the chunks, and the end of the file */
+	private long[] chunks()throws IOException{
+		long size=channel.size();
+		int n=(int)Math.max(1, Math.min(Integer.MAX_VALUE-1, (size+chunkSize-1)/chunkSize));
+		final long[] nominal=new long[n+1];
+		for(int i=0; i<n; i++)
+			nominal[i]=i*chunkSize;
+		nominal[n]=size;
+
+		//Count the delimiters in each chunk, in parallel.
+		List<Future<Long>> counts=new ArrayList<Future<Long>>(n);
+		for(int i=0; i<n; i++){
+			final long from=nominal[i];
+			final long to=nominal[i+1];
+			counts.add(pool.submit(new Callable<Long>(){
+				@Override public Long call()throws IOException{return delimiters(from, to);}
+			}));
+		}
+
+		//A chunk starts inside a quoted field if the delimiters before it are odd.
+		//Align each chunk to the first record that starts after its nominal start.
+		long[] starts=new long[n+1];
+		long delimiters=0;
+		for(int i=1; i<n; i++){
+			delimiters+=get(counts.get(i-1));
+			starts[i]=Math.max(starts[i-1], align(nominal[i], delimiters%2==1, size));
+		}
+		starts[n]=size;
+		return starts;
+	}
+
+	/** Counts the delimiters between two offsets. */
+	private long delimiters(long from, long to)throws IOException{
+		MappedByteBuffer bytes=channel.map(MapMode.READ_ONLY, from, to-from);
+		int n=(int)(to-from);
+		long count=0;
+		for(int i=0; i<n; i++)
+			if(bytes.get(i)==delimiter)
+				count++;
+		return count;
+	}
+
+	/** Finds the first line terminator from an offset on that is not in a
+	 * quoted field, and returns the offset just after it.
+	 * @param quoted Is the offset inside a quoted field? */
+	private long align(long from, boolean quoted, long size)throws IOException{
+		long offset=from;
+		while(offset<size){
+			long length=Math.min(chunkSize, size-offset);
+			MappedByteBuffer bytes=channel.map(MapMode.READ_ONLY, offset, Math.min(length+1, size-offset));
+			for(int i=0; i<length; i++){
+				byte b=bytes.get(i);
+				if(b==delimiter)
+					quoted=!quoted;
+				else if(!quoted && b=='\n')
+					return offset+i+1;
+				else if(!quoted && b=='\r')
+					return offset+i+1 + (i+1<bytes.limit() && bytes.get(i+1)=='\n' ? 1 : 0);
+			}
+			offset+=length;
+		}
+		return size;
+	}
+
+	/** Submits the next chunk for parsing, if there is one. */
+	private void submit(){
+		if(next==starts.length-1)
+			return;
+		final long from=starts[next];
+		final long to=starts[next+1];
+		next++;
+		Callable<List<Object[]>> task=new Callable<List<Object[]>>(){
+			@Override public List<Object[]> call()throws IOException{return parse(from, to);}
+		};
+		if(ordered)
+			pending.add(pool.submit(task));
+		else
+			pending.add(completed.submit(task));
+		running++;
+	}
+
+	/** Takes the records of the next chunk, waiting for them. */
+	private List<Object[]> take()throws IOException{
+		running--;
+		if(ordered)
+			return get(pending.poll());
+		try{
+			Future<List<Object[]>> future=completed.take();
+			pending.remove(future);
+			return get(future);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+
+	/** Parses the records of a chunk. */
+	private List<Object[]> parse(long from, long to)throws IOException{
+		List<Object[]> records=new ArrayList<Object[]>();
+		if(from==to)
+			return records;
+		//Not closed: the channel is shared.
+		MappedCSVReader reader=new MappedCSVReader(channel, from, to, charset, (int)Math.min(Integer.MAX_VALUE, to-from));
+		reader.setDelimiter(delimiter);
+		reader.setSeparator(separator);
+		reader.setStrict(strict);
+		Object[] record=reader.readln();
+		while(record!=null){
+			records.add(record);
+			record=reader.readln();
+		}
+		return records;
+	}
+
+	/** Waits for a result, and unwraps exceptions. */
+	private static <T> T get(Future<T> future)throws IOException{
+		try{
+			return future.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}catch(ExecutionException e){
+			Throwable cause=e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException(cause);
+		}
+	}
+}
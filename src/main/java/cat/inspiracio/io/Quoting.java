@@ -0,0 +1,31 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+/** Which fields CSVWriter encloses in delimiters. */
+public enum Quoting{
+
+	/** Every field. This is the default. */
+	ALWAYS,
+
+	/** Only fields that contain the separator, the delimiter, CR, or LF,
+	 * as RFC 4180 requires. */
+	MINIMAL,
+
+	/** Every field except numbers, unless they need it as in MINIMAL. */
+	NON_NUMERIC
+}
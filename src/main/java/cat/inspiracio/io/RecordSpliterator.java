@@ -0,0 +1,99 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/** Spliterator of the records of a CSVReader, for CSVReader.stream().
+ * <p>
+ * trySplit() does not parse: it copies the text of a batch of records
+ * and returns a spliterator with its own reader of that text, so that
+ * another thread parses the batch. The batches grow with each split,
+ * as in Spliterators.iterator(). A batch does not split further.
+ * <p>
+ * IOExceptions are thrown as UncheckedIOException. */
+final class RecordSpliterator implements Spliterator<Object[]>{
+
+	/** Records in the first batch, and the increment for each further batch. */
+	private static final int BATCH=1024;
+
+	/** Maximal records in a batch. */
+	private static final int MAX_BATCH=1<<16;
+
+	private final CSVReader reader;
+
+	/** Records in the last batch that was split off. */
+	private int batch=0;
+
+	/** Estimated number of records, or Long.MAX_VALUE if unknown. */
+	private final long size;
+
+	/** Spliterator of all the records of the reader. */
+	RecordSpliterator(CSVReader reader){this(reader, Long.MAX_VALUE);}
+
+	/** @param size Estimated number of records, or Long.MAX_VALUE if unknown.
+	 * 	A spliterator with known size does not split. */
+	private RecordSpliterator(CSVReader reader, long size){
+		this.reader=reader;
+		this.size=size;
+	}
+
+	@Override public boolean tryAdvance(Consumer<? super Object[]> action){
+		try{
+			Object[] record=reader.readln();
+			if(record==null)
+				return false;
+			action.accept(record);
+			return true;
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override public void forEachRemaining(Consumer<? super Object[]> action){
+		try{
+			Object[] record=reader.readln();
+			while(record!=null){
+				action.accept(record);
+				record=reader.readln();
+			}
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override public Spliterator<Object[]> trySplit(){
+		if(size!=Long.MAX_VALUE)
+			return null;
+		try{
+			batch=Math.min(MAX_BATCH, batch+BATCH);
+			char[] text=reader.readText(batch);
+			if(text==null)
+				return null;
+			return new RecordSpliterator(reader.reader(text), batch);
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override public long estimateSize(){return size;}
+
+	@Override public int characteristics(){return ORDERED | NONNULL;}
+}
@@ -0,0 +1,210 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Index of the rows of a CSV file, for reading any row without reading
+ * the rows before it.
+ * <p>
+ * The index knows the offset in the file of every n-th record. Finding
+ * the record boundaries follows delimited fields across lines, exactly as
+ * reading the file does. Seeking to a row jumps to the closest indexed
+ * record before it and skips the rest without decoding them.
+ * <pre>
+ * RowIndex index=RowIndex.build(new MappedCSVReader(file), 1000)
+ * index.write(sidecar)
+ * ...
+ * RowIndex index=RowIndex.read(sidecar)
+ * MappedCSVReader csv=new MappedCSVReader(file)
+ * index.seek(csv, 38000000)
+ * Object[] row=csv.readln()
+ * </pre>
+ * Rows count from 0, including the header if the file has one.
+ * <p>
+ * In the sidecar file, the offsets are delta-encoded as variable-length
+ * longs: mostly two or three bytes each. */
+public final class RowIndex{
+
+	// Constants ----------------------------------------------
+
+	/** Start of a sidecar file: "CSVR". */
+	private static final int MAGIC=0x43535652;
+
+	// State ----------------------------------------------
+
+	/** An offset for every so many records. */
+	private final int interval;
+
+	/** Offsets of records 0, interval, 2*interval, ... */
+	private final long[] offsets;
+
+	/** How many records the file has. */
+	private final long rows;
+
+	/** Offset after the last record. */
+	private final long length;
+
+	// Constructors ----------------------------------------------
+
+	private RowIndex(int interval, long[] offsets, long rows, long length){
+		this.interval=interval;
+		this.offsets=offsets;
+		this.rows=rows;
+		this.length=length;
+	}
+
+	/** Builds the index of a file by scanning it once, without decoding fields.
+	 * @param reader a new reader of the file, with the separator and the
+	 * 	delimiter of the file. It is consumed but not closed.
+	 * @param interval an offset for every so many records */
+	public static RowIndex build(MappedCSVReader reader, int interval)throws IOException{
+		if(interval<=0)
+			throw new IllegalArgumentException(interval+"");
+		long[] offsets=new long[1024];
+		int n=0;
+		long rows=0;
+		long offset=reader.getOffset();
+		while(true){
+			if(rows%interval==0){
+				if(n==offsets.length)
+					offsets=Arrays.copyOf(offsets, 2*n);
+				offsets[n++]=offset;
+			}
+			if(!reader.skip())
+				break;
+			rows++;
+			offset=reader.getOffset();
+		}
+		if(rows%interval==0)
+			n--;//the end is not a record
+		return new RowIndex(interval, Arrays.copyOf(offsets, n), rows, offset);
+	}
+
+	// Accessors ------------------------------------------
+
+	/** How many records does the file have? */
+	public long getRows(){return rows;}
+
+	/** The index knows the offset of every so many records. */
+	public int getInterval(){return interval;}
+
+	/** Offset in the file after the last record. */
+	public long getLength(){return length;}
+
+	// Business methods ------------------------------------------
+
+	/** Positions a reader at a row: the next record it reads is that row.
+	 * Does not change the reader's count.
+	 * @param reader a reader of the indexed file, with the same separator
+	 * 	and delimiter as when building the index
+	 * @param row counting from 0. At getRows() or after, the reader is at
+	 * 	the end.
+	 * @exception IOException The file is shorter than when it was indexed. */
+	public void seek(MappedCSVReader reader, long row)throws IOException{
+		if(row<0)
+			throw new IllegalArgumentException(row+"");
+		if(reader.getEnd()<length)
+			throw new IOException("The file is shorter than the index");
+		if(rows<=row){
+			reader.seek(length);
+			return;
+		}
+		int i=(int)(row/interval);
+		reader.seek(offsets[i]);
+		for(long skip=row-(long)i*interval; 0<skip; skip--)
+			reader.skip();
+	}
+
+	/** Writes the index to a sidecar file. */
+	public void write(File file)throws IOException{
+		DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try{
+			out.writeInt(MAGIC);
+			out.writeInt(interval);
+			out.writeLong(rows);
+			out.writeLong(length);
+			out.writeInt(offsets.length);
+			long previous=0;
+			for(long offset : offsets){
+				writeVarLong(out, offset-previous);
+				previous=offset;
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	/** Reads an index from a sidecar file. */
+	public static RowIndex read(File file)throws IOException{
+		DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			if(in.readInt()!=MAGIC)
+				throw new IOException("Not a row index: " + file);
+			int interval=in.readInt();
+			long rows=in.readLong();
+			long length=in.readLong();
+			int n=in.readInt();
+			if(interval<=0 || rows<0 || n<0 || (rows+interval-1)/interval!=n)
+				throw new IOException("Bad row index: " + file);
+			long[] offsets=new long[n];
+			long offset=0;
+			for(int i=0; i<n; i++){
+				offset+=readVarLong(in);
+				offsets[i]=offset;
+			}
+			return new RowIndex(interval, offsets, rows, length);
+		}finally{
+			in.close();
+		}
+	}
+
+	@Override public String toString(){
+		return "RowIndex[rows=" + rows + ", interval=" + interval + ", length=" + length + "]";
+	}
+
+	// Package methods ------------------------------------
+
+	/** Writes a long that is not negative in 7-bit groups, low first. */
+	static void writeVarLong(DataOutputStream out, long n)throws IOException{
+		while(0x7F<n){
+			out.writeByte((int)(n & 0x7F) | 0x80);
+			n>>>=7;
+		}
+		out.writeByte((int)n);
+	}
+
+	/** Reads a long written by writeVarLong(). */
+	static long readVarLong(DataInputStream in)throws IOException{
+		long n=0;
+		for(int shift=0; shift<64; shift+=7){
+			int b=in.readUnsignedByte();
+			n|=(long)(b & 0x7F) << shift;
+			if((b & 0x80)==0)
+				return n;
+		}
+		throw new IOException("Bad variable-length long");
+	}
+}
@@ -0,0 +1,200 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Finds the types of the columns from a sample of the records, so that
+ * the records can then be read with a schema, without guessing the type
+ * of every field.
+ * <p>
+ * The type of a column is the narrowest type that holds all its sampled
+ * values as CSVReader.readln() interprets them: INT widens to LONG widens
+ * to DOUBLE, and anything else to STRING. Fields "null" and empty fields
+ * are null, and make the column nullable. A column of only nulls is STRING.
+ * <p>
+ * The sample is the first records, or a random sample of all records
+ * (reservoir sampling). The random sample reads the whole input, but only
+ * finds where the records end, and only interprets the sampled records.
+ * Example:
+ * <pre>
+ * SchemaInference inference=new SchemaInference()
+ * inference.setReservoir(true)
+ * ColumnType[] schema=inference.infer(new CSVReader(new FileReader(file)))
+ * CSVReader csv=new CSVReader(new FileReader(file))
+ * csv.setSchema(schema)
+ * </pre>
+ * The reader should be in header mode if the input has a header.
+ * If the reader projects columns, the types are still by column index in
+ * the file, as setSchema() needs them, and the columns that are not
+ * projected are SKIP.
+ * Not threadsafe. */
+public final class SchemaInference{
+
+	// State ----------------------------------------------
+
+	/** Number of records in the sample. */
+	private int sampleSize=1000;
+
+	/** Random sample of all records, or the first records? */
+	private boolean reservoir=false;
+
+	private Random random=new Random();
+
+	/** Inferred types, or null while nothing is inferred. */
+	private ColumnType[] types;
+
+	/** Which columns have nulls? */
+	private boolean[] nullable;
+
+	/** Number of records sampled. */
+	private int sampled;
+
+	// Configuration methods ------------------------------------------
+
+	/** How many records to sample? The default is 1000. */
+	public void setSampleSize(int records){
+		if(records<1)
+			throw new IllegalArgumentException(records+"");
+		sampleSize=records;
+	}
+
+	/** Samples records at random from the whole input, or the first records
+	 * (the default). The filters of the reader apply to the sampled records,
+	 * so the random sample may have fewer records. */
+	public void setReservoir(boolean reservoir){this.reservoir=reservoir;}
+
+	/** Sets the seed of the random sample, to make it repeatable. */
+	public void setSeed(long seed){random=new Random(seed);}
+
+	// Accessors ------------------------------------------
+
+	/** The inferred types, or null if nothing is inferred yet. */
+	public ColumnType[] getTypes(){return types==null ? null : types.clone();}
+
+	/** Has the column a null in the sample?
+	 * @param column index of the column in the file */
+	public boolean isNullable(int column){return nullable[column];}
+
+	/** How many records have been sampled? */
+	public int getSampled(){return sampled;}
+
+	// Business methods ------------------------------------------
+
+	/** Infers the types of the columns from a sample of the records.
+	 * Reads the reader: in the random sample, to the end.
+	 * @return the types, for CSVReader.setSchema() */
+	public ColumnType[] infer(CSVReader reader)throws IOException{
+		types=new ColumnType[0];
+		nullable=new boolean[0];
+		sampled=0;
+		reader.getHeader();
+		int[] columns=reader.getColumns();
+		if(reservoir)
+			reader=sample(reader);
+		Object[] record;
+		while(sampled<sampleSize && (record=reader.readln())!=null){
+			add(record);
+			sampled++;
+		}
+		for(int i=0; i<types.length; i++)
+			if(types[i]==null)
+				types[i]=ColumnType.STRING;
+		if(columns!=null)
+			unproject(columns);
+		return types.clone();
+	}
+
+	// Helpers --------------------------------------------
+
+	/** Takes a random sample of the records (algorithm R).
+	 * @return reads the sampled records */
+	private CSVReader sample(CSVReader reader)throws IOException{
+		char[][] sample=new char[sampleSize][];
+		int n=0;
+		for(long i=0; ; i++){
+			if(i<sampleSize){
+				char[] text=reader.readText(1);
+				if(text==null)
+					break;
+				sample[n++]=text;
+				continue;
+			}
+			long j=(long)(random.nextDouble()*(i+1));
+			if(j<sampleSize){
+				char[] text=reader.readText(1);
+				if(text==null)
+					break;
+				sample[(int)j]=text;
+			}
+			else if(!reader.skipRecord())
+				break;
+		}
+
+		//one text, each record terminated
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<n; i++){
+			char[] text=sample[i];
+			builder.append(text);
+			char last=text[text.length-1];
+			if(last!='\n' && last!='\r')
+				builder.append('\n');
+		}
+		char[] text=new char[builder.length()];
+		builder.getChars(0, text.length, text, 0);
+		return reader.reader(text);
+	}
+
+	/** Puts the types of the projected columns at their index in the file,
+	 * and makes the other columns SKIP. */
+	private void unproject(int[] columns){
+		int n=0;
+		for(int column : columns)
+			n=Math.max(n, column+1);
+		ColumnType[] types=new ColumnType[n];
+		boolean[] nullable=new boolean[n];
+		Arrays.fill(types, ColumnType.SKIP);
+		for(int k=0; k<columns.length; k++){
+			types[columns[k]]= k<this.types.length ? this.types[k] : ColumnType.STRING;
+			nullable[columns[k]]= k<this.nullable.length && this.nullable[k];
+		}
+		this.types=types;
+		this.nullable=nullable;
+	}
+
+	/** Widens the types with the values of one record. */
+	private void add(Object[] record){
+		if(types.length<record.length){
+			int old=types.length;
+			types=Arrays.copyOf(types, record.length);
+			nullable=Arrays.copyOf(nullable, record.length);
+			for(int i=old; i<record.length; i++)
+				nullable[i]= 0<sampled;//earlier records do not have the column
+		}
+		for(int i=0; i<record.length; i++){
+			Object value=record[i];
+			if(value==null || "".equals(value))
+				nullable[i]=true;
+			else
+				types[i]=ColumnType.widest(types[i], ColumnType.of(value));
+		}
+		for(int i=record.length; i<types.length; i++)
+			nullable[i]=true;
+	}
+}
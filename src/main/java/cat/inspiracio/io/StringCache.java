@@ -0,0 +1,160 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.util.Arrays;
+
+/** Deduplicates the Strings made from the fields of one column, so that
+ * repeated values share one String. See CSVReader.setDeduplicate().
+ * <p>
+ * An open-addressed hash table keyed on the hash of the characters:
+ * finding a value does not make a String. It holds at most capacity
+ * values. When it is full and another value comes, it is emptied, unless
+ * it has missed more often than it has hit since it was last emptied:
+ * then the column has too many different values, and the cache stops
+ * caching and just makes Strings.
+ * <p>
+ * Not threadsafe. */
+public final class StringCache{
+
+	// State ----------------------------------------------
+
+	/** Maximal number of values. */
+	private final int capacity;
+
+	/** Values by slot, or null. Twice as many slots as values, at least. */
+	private String[] strings;
+
+	/** Hash codes of the values, by slot. */
+	private int[] hashes;
+
+	/** Number of values. */
+	private int size=0;
+
+	private long hits=0;
+	private long misses=0;
+	private long evictions=0;
+
+	/** Hits and misses since the cache was last emptied. */
+	private long recentHits=0;
+	private long recentMisses=0;
+
+	/** Has the cache stopped caching? */
+	private boolean bypass=false;
+
+	// Constructor ----------------------------------------
+
+	StringCache(int capacity){
+		this.capacity=capacity;
+		int slots=2;
+		while(slots < 2*capacity)
+			slots*=2;
+		strings=new String[slots];
+		hashes=new int[slots];
+	}
+
+	// Accessors ------------------------------------------
+
+	/** Maximal number of values. */
+	public int getCapacity(){return capacity;}
+
+	/** Number of values in the cache now. */
+	public int size(){return size;}
+
+	/** How many values have been found in the cache? */
+	public long getHits(){return hits;}
+
+	/** How many values have not been found in the cache, and needed a new String? */
+	public long getMisses(){return misses;}
+
+	/** How many times has the cache been emptied because it was full? */
+	public long getEvictions(){return evictions;}
+
+	/** Has the cache stopped caching because the column has too many
+	 * different values? */
+	public boolean isBypassed(){return bypass;}
+
+	@Override public String toString(){
+		return "StringCache[size=" + size + ", hits=" + hits + ", misses=" + misses
+			+ ", evictions=" + evictions + (bypass ? ", bypassed]" : "]");
+	}
+
+	// Package methods ------------------------------------
+
+	/** The String with these characters, from the cache if it is there. */
+	String get(char[] chars, int start, int length){
+		if(bypass){
+			misses++;
+			return new String(chars, start, length);
+		}
+		int hash=0;
+		for(int i=start; i<start+length; i++)
+			hash=31*hash + chars[i];
+		int mask=strings.length-1;
+		int slot=(hash ^ hash>>>16) & mask;
+		String s=strings[slot];
+		while(s!=null){
+			if(hashes[slot]==hash && equal(s, chars, start, length)){
+				hits++;
+				recentHits++;
+				return s;
+			}
+			slot=(slot+1) & mask;
+			s=strings[slot];
+		}
+		misses++;
+		recentMisses++;
+		s=new String(chars, start, length);
+		if(size==capacity){
+			evict();
+			if(bypass)
+				return s;
+			slot=(hash ^ hash>>>16) & mask;
+		}
+		strings[slot]=s;
+		hashes[slot]=hash;
+		size++;
+		return s;
+	}
+
+	// Helpers --------------------------------------------
+
+	/** The cache is full: empty it, or stop caching. */
+	private void evict(){
+		evictions++;
+		if(recentHits < recentMisses){
+			bypass=true;
+			strings=null;
+			hashes=null;
+		}
+		else
+			Arrays.fill(strings, null);
+		size=0;
+		recentHits=0;
+		recentMisses=0;
+	}
+
+	/** Does the String have these characters? */
+	private static boolean equal(String s, char[] chars, int start, int length){
+		if(s.length()!=length)
+			return false;
+		for(int i=0; i<length; i++)
+			if(s.charAt(i)!=chars[start+i])
+				return false;
+		return true;
+	}
+}
@@ -0,0 +1,200 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** One column of a CSVTable, while it is loaded and afterwards.
+ * <p>
+ * The type of the column is the widest type of its values, as
+ * CSVReader.readln() interprets them: INT, LONG, DOUBLE, BOOLEAN, or STRING.
+ * When a value does not fit, the column widens: INT to LONG to DOUBLE,
+ * and anything else to STRING. Values that were read before the column
+ * widened to STRING become String.valueOf(value).
+ * <p>
+ * An empty field is null, unless the column is STRING, where it is "". */
+final class TableColumn{
+
+	// State ----------------------------------------------
+
+	/** Type of the column, or null while all values are null. */
+	ColumnType type;
+
+	/** Number of values. */
+	int size=0;
+
+	/** Which values are null? */
+	final BitSet nulls=new BitSet();
+
+	/** Which null values were empty fields, while the column is not STRING? */
+	private BitSet empties=new BitSet();
+
+	/** Values, according to the type. */
+	int[] ints;
+	long[] longs;
+	double[] doubles;
+	boolean[] booleans;
+
+	/** Codes of the values of a STRING column, in the dictionary. */
+	int[] codes;
+
+	/** The different values of a STRING column, by code. */
+	String[] dictionary;
+
+	/** Codes of the values, while loading a STRING column. */
+	private Map<String, Integer> index;
+	private List<String> values;
+
+	// Constructor ----------------------------------------
+
+	/** @param rows the column starts with so many null values */
+	TableColumn(int rows){
+		size=rows;
+		nulls.set(0, rows);
+	}
+
+	// Methods --------------------------------------------
+
+	/** Adds a value as readln() returns it. */
+	void add(Object value){
+		int row=size++;
+		if(value==null){
+			nulls.set(row);
+			return;
+		}
+		if(value instanceof String && ((String)value).isEmpty() && type!=ColumnType.STRING){
+			nulls.set(row);
+			empties.set(row);
+			return;
+		}
+		ColumnType t=ColumnType.widest(type, ColumnType.of(value));
+		if(type!=t)
+			widen(t, row);
+		grow(row+1);
+		switch(type){
+		case INT: ints[row]=(Integer)value; break;
+		case LONG: longs[row]=((Number)value).longValue(); break;
+		case DOUBLE: doubles[row]=((Number)value).doubleValue(); break;
+		case BOOLEAN: booleans[row]=(Boolean)value; break;
+		default: codes[row]=code(String.valueOf(value));
+		}
+	}
+
+	/** Trims the arrays after loading. */
+	void finish(){
+		if(type==null)
+			widen(ColumnType.STRING, size);
+		switch(type){
+		case INT: ints=Arrays.copyOf(ints, size); break;
+		case LONG: longs=Arrays.copyOf(longs, size); break;
+		case DOUBLE: doubles=Arrays.copyOf(doubles, size); break;
+		case BOOLEAN: booleans=Arrays.copyOf(booleans, size); break;
+		default:
+			codes=Arrays.copyOf(codes, size);
+			dictionary=values.toArray(new String[values.size()]);
+			index=null;
+			values=null;
+		}
+		empties=null;
+	}
+
+	/** The value of a row, boxed. */
+	Object get(int row){
+		if(nulls.get(row))
+			return null;
+		switch(type){
+		case INT: return ints[row];
+		case LONG: return longs[row];
+		case DOUBLE: return doubles[row];
+		case BOOLEAN: return booleans[row];
+		default: return dictionary[codes[row]];
+		}
+	}
+
+	// Helpers --------------------------------------------
+
+	/** Converts the values read so far to a wider type.
+	 * @param rows how many values have been read */
+	private void widen(ColumnType to, int rows){
+		int n=Math.max(16, size);
+		switch(to){
+		case LONG:
+			//Trailing null rows may be beyond the end of the old array.
+			longs=new long[n];
+			for(int i=0; ints!=null && i<Math.min(rows, ints.length); i++)
+				longs[i]=ints[i];
+			break;
+		case DOUBLE:
+			doubles=new double[n];
+			for(int i=0; ints!=null && i<Math.min(rows, ints.length); i++)
+				doubles[i]=ints[i];
+			for(int i=0; longs!=null && i<Math.min(rows, longs.length); i++)
+				doubles[i]=longs[i];
+			break;
+		case STRING:
+			codes=new int[n];
+			index=new HashMap<String, Integer>();
+			values=new ArrayList<String>();
+			for(int i=0; i<rows; i++){
+				if(empties.get(i)){
+					nulls.clear(i);
+					codes[i]=code("");
+				}
+				else if(!nulls.get(i))
+					codes[i]=code(String.valueOf(get(i)));
+			}
+			break;
+		case INT: ints=new int[n]; break;
+		case BOOLEAN: booleans=new boolean[n]; break;
+		default:
+		}
+		ints= to==ColumnType.INT ? ints : null;
+		longs= to==ColumnType.LONG ? longs : null;
+		doubles= to==ColumnType.DOUBLE ? doubles : null;
+		booleans= to==ColumnType.BOOLEAN ? booleans : null;
+		if(to!=ColumnType.STRING)
+			codes=null;
+		type=to;
+	}
+
+	/** Makes the array of the values big enough for so many rows. */
+	private void grow(int rows){
+		switch(type){
+		case INT: if(ints.length<rows)ints=Arrays.copyOf(ints, 2*rows); break;
+		case LONG: if(longs.length<rows)longs=Arrays.copyOf(longs, 2*rows); break;
+		case DOUBLE: if(doubles.length<rows)doubles=Arrays.copyOf(doubles, 2*rows); break;
+		case BOOLEAN: if(booleans.length<rows)booleans=Arrays.copyOf(booleans, 2*rows); break;
+		default: if(codes.length<rows)codes=Arrays.copyOf(codes, 2*rows);
+		}
+	}
+
+	/** The code of a value in the dictionary, adding it if it is new. */
+	private int code(String value){
+		Integer code=index.get(value);
+		if(code==null){
+			code=values.size();
+			index.put(value, code);
+			values.add(value);
+		}
+		return code;
+	}
+}
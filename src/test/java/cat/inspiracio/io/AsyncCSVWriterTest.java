@@ -0,0 +1,175 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class AsyncCSVWriterTest{
+
+	/** Same output as CSVWriter */
+	@Test public void tsame() throws IOException{
+		StringWriter expected=new StringWriter();
+		CSVWriter sync=new CSVWriter(expected);
+		StringWriter actual=new StringWriter();
+		AsyncCSVWriter async=new AsyncCSVWriter(new CSVWriter(actual), 16, Backpressure.BLOCK);
+		for(int i=0; i<10000; i++){
+			Object[] record={i, "a\"b", i*0.5, i%2==0, null, "x,\ny"};
+			sync.writeln(record);
+			async.writeln(record);
+		}
+		sync.close();
+		async.close();
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(10000, async.getWritten());
+		assertEquals(0, async.getDropped());
+	}
+
+	/** Many threads, records of each thread in order */
+	@Test public void tthreads() throws Exception{
+		final int THREADS=8;
+		final int RECORDS=5000;
+		StringWriter out=new StringWriter();
+		final AsyncCSVWriter async=new AsyncCSVWriter(new CSVWriter(out), 64, Backpressure.BLOCK);
+		Thread[] threads=new Thread[THREADS];
+		for(int t=0; t<THREADS; t++){
+			final int thread=t;
+			threads[t]=new Thread(){
+				@Override public void run(){
+					try{
+						for(int i=0; i<RECORDS; i++)
+							async.writeln(thread, i);
+					}catch(IOException e){
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		async.close();
+
+		int[] next=new int[THREADS];
+		CSVReader reader=new CSVReader(new StringReader(out.toString()));
+		Object[] record;
+		while((record=reader.readln())!=null){
+			int thread=(Integer)record[0];
+			assertEquals(next[thread]++, record[1]);
+		}
+		for(int n : next)
+			assertEquals(RECORDS, n);
+	}
+
+	/** flush() waits until the records are in the Writer */
+	@Test public void tflush() throws IOException{
+		StringWriter out=new StringWriter();
+		AsyncCSVWriter async=new AsyncCSVWriter(new CSVWriter(out), 16, Backpressure.BLOCK);
+		async.writeln("a", 1);
+		async.flush();
+		assertEquals("\"a\",\"1\"" + System.getProperty("line.separator"), out.toString());
+		async.close();
+	}
+
+	/** DROP and FAIL when the writer thread is stuck */
+	@Test public void tfull() throws Exception{
+		Stuck stuck=new Stuck();
+		AsyncCSVWriter drop=new AsyncCSVWriter(new CSVWriter(stuck), 2, Backpressure.DROP);
+		drop.writeln("first");
+		stuck.entered.await();
+		drop.writeln("a");
+		drop.writeln("b");
+		drop.writeln("c");
+		assertEquals(1, drop.getDropped());
+		stuck.release.countDown();
+		drop.close();
+		assertEquals(3, drop.getWritten());
+	}
+
+	@Test public void tfail() throws Exception{
+		Stuck stuck=new Stuck();
+		AsyncCSVWriter fail=new AsyncCSVWriter(new CSVWriter(stuck), 1, Backpressure.FAIL);
+		fail.writeln("first");
+		stuck.entered.await();
+		fail.writeln("a");
+		try{
+			fail.writeln("b");
+			fail();
+		}catch(IllegalStateException e){}
+		stuck.release.countDown();
+		fail.close();
+		assertEquals(2, fail.getWritten());
+	}
+
+	/** Failure of the writer thread reaches the caller */
+	@Test(expected=IOException.class) public void tfailure() throws IOException{
+		Writer broken=new Writer(){
+			@Override public void write(char[] cbuf, int off, int len) throws IOException{throw new IOException("broken");}
+			@Override public void flush(){}
+			@Override public void close(){}
+		};
+		AsyncCSVWriter async=new AsyncCSVWriter(new CSVWriter(broken), 16, Backpressure.BLOCK);
+		async.writeln("a");
+		async.close();
+	}
+
+	/** The writer thread fails with a RuntimeException: flush() throws
+	 * instead of waiting forever. */
+	@Test public void truntime() throws IOException{
+		Writer broken=new Writer(){
+			@Override public void write(char[] cbuf, int off, int len){throw new UncheckedIOException(new IOException("broken"));}
+			@Override public void flush(){}
+			@Override public void close(){}
+		};
+		AsyncCSVWriter async=new AsyncCSVWriter(new CSVWriter(broken), 16, Backpressure.BLOCK);
+		async.writeln("a");
+		try{
+			async.flush();
+			fail();
+		}catch(IOException e){
+			assertTrue(e.getCause() instanceof UncheckedIOException);
+		}
+		try{
+			async.close();
+			fail();
+		}catch(IOException e){
+			assertTrue(e.getCause() instanceof UncheckedIOException);
+		}
+	}
+
+	/** A Writer whose flush blocks until released. */
+	static class Stuck extends StringWriter{
+		final CountDownLatch entered=new CountDownLatch(1);
+		final CountDownLatch release=new CountDownLatch(1);
+		@Override public void flush(){
+			entered.countDown();
+			try{
+				release.await();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
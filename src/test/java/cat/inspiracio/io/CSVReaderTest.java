@@ -16,7 +16,9 @@ limitations under the License.
 */
 package cat.inspiracio.io;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -25,7 +27,10 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
@@ -212,6 +217,197 @@ public class CSVReaderTest extends CSVTest {
 		assertEquals("two", r[1]);
 	}
 	
+	/** Fields longer than the buffer, and a reader that delivers one
+	 * character at a time, so that every field crosses buffer boundaries. */
+	@Test public void tbufferBoundaries()throws IOException{
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<100000; i++)
+			builder.append('x');
+		String longField=builder.toString();
+		String in=longField + ",\"a\"\"b\",c\r\n\"" + longField + "\"\"\",12\r\n";
+		for(Reader r : new Reader[]{new StringReader(in), new Trickle(in)}){
+			CSVReader reader=new CSVReader(r);
+			Object[]record=reader.readln();
+			assertEquals(3, record.length);
+			assertEquals(longField, record[0]);
+			assertEquals("a\"b", record[1]);
+			assertEquals("c", record[2]);
+			record=reader.readln();
+			assertEquals(2, record.length);
+			assertEquals(longField + "\"", record[0]);
+			assertEquals(12, record[1]);
+			assertEquals(null, reader.readln());
+		}
+	}
+
+	/** Delivers one character per read. */
+	static class Trickle extends StringReader{
+		Trickle(String s){super(s);}
+		@Override public int read(char[] cbuf, int off, int len)throws IOException{
+			return super.read(cbuf, off, Math.min(1, len));
+		}
+	}
+
+	/** Lenient: a delimited field without final delimiter is dropped. */
+	@Test public void tlenientMissingDelimiter()throws IOException{
+		String in="one,\"two";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		Object[]r=reader.readln();
+		assertEquals(1, r.length);
+		assertEquals("one", r[0]);
+		assertEquals(null, reader.readln());
+	}
+
+	/** Strict: a delimited field without final delimiter throws. */
+	@Test(expected=MalformedCSVException.class)
+	public void tstrictMissingDelimiter()throws IOException{
+		String in="one\n\"two";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.setStrict(true);
+		reader.readln();
+		reader.readln();
+	}
+
+	/** Strict: characters after the final delimiter throw. */
+	@Test public void tstrictAfterDelimiter()throws IOException{
+		String in="\"one\"two\n";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.setStrict(true);
+		try{
+			reader.readln();
+			fail();
+		}catch(MalformedCSVException e){
+			assertEquals(1, e.getRecord());
+		}
+
+		//In header mode, the header is not counted.
+		reader=new CSVReader(new StringReader("a,b\n1,2\n\"one\"two\n"));
+		reader.setHeader(true);
+		reader.setStrict(true);
+		reader.readln();
+		assertEquals(1, reader.getCount());
+		try{
+			reader.readln();
+			fail();
+		}catch(MalformedCSVException e){
+			assertEquals(2, e.getRecord());
+		}
+
+		//A malformed header is record 0.
+		reader=new CSVReader(new StringReader("\"a\"b\n1\n"));
+		reader.setHeader(true);
+		reader.setStrict(true);
+		try{
+			reader.readln();
+			fail();
+		}catch(MalformedCSVException e){
+			assertEquals(0, e.getRecord());
+		}
+	}
+
+	/** stream(), sequential and parallel, gives the records of readln(). */
+	@Test public void tstream()throws IOException{
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<20000; i++)
+			builder.append(i).append(",\"a\"\"\nb\",").append(i%7==0 ? "ab\"c" : "\"x\"y").append(i%2==0 ? "\r\n" : "\n");
+		String in=builder.toString();
+
+		List<Object[]> expected=new ArrayList<Object[]>();
+		CSVReader reader=new CSVReader(new StringReader(in));
+		Object[] record=reader.readln();
+		while(record!=null){
+			expected.add(record);
+			record=reader.readln();
+		}
+
+		List<Object[]> sequential=new CSVReader(new StringReader(in)).stream().collect(Collectors.toList());
+		List<Object[]> parallel=new CSVReader(new StringReader(in)).stream().parallel().collect(Collectors.toList());
+		assertEquals(expected.size(), sequential.size());
+		assertEquals(expected.size(), parallel.size());
+		for(int i=0; i<expected.size(); i++){
+			assertArrayEquals(expected.get(i), sequential.get(i));
+			assertArrayEquals(expected.get(i), parallel.get(i));
+		}
+	}
+
+	@Test public void tcolumns()throws IOException{
+		String in="a,\"b\"\"\n,c\",1,2.5,true\n\"x\",y,3\n";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.setColumns(4, 0, 2);
+		assertArrayEquals(new Object[]{true, "a", 1}, reader.readln());
+		assertArrayEquals(new Object[]{null, "x", 3}, reader.readln());
+		assertEquals(null, reader.readln());
+	}
+
+	@Test public void tcolumnsByName()throws IOException{
+		String in="id,name,\"age\"\n1,\"Smith, J\",40\n2,Jones,\n";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.setColumns("age", "id");
+		assertArrayEquals(new Object[]{40, 1}, reader.readln());
+		assertArrayEquals(new Object[]{"", 2}, reader.readln());
+		assertEquals(null, reader.readln());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void tcolumnsUnknown()throws IOException{
+		new CSVReader(new StringReader("id,name\n")).setColumns("age");
+	}
+
+	@Test public void tcolumnsNext()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("a,\"b\",c\n"));
+		reader.setColumns(2);
+		CSVRecord record=reader.next();
+		assertEquals(3, record.size());
+		assertEquals("", record.getString(1));
+		assertEquals("c", record.getString(2));
+	}
+
+	@Test(expected=MalformedCSVException.class)
+	public void tcolumnsStrict()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("a,\"b"));
+		reader.setStrict(true);
+		reader.setColumns(0);
+		reader.readln();
+	}
+
+	@Test public void tfilter()throws IOException{
+		String in="ES,\"Madrid\",3.2\nFR,Paris,2.1\nES,\"Bar\"\"celona\",1.6\nES,Sevilla\nDE,\"Ber\nlin\",3.6\n";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.addFilter(0, FieldFilter.equalTo("ES"));
+		reader.addFilter(2, FieldFilter.between(1, 3.5));
+		assertArrayEquals(new Object[]{"ES", "Madrid", 3.2}, reader.readln());
+		assertArrayEquals(new Object[]{"ES", "Bar\"celona", 1.6}, reader.readln());
+		assertEquals(null, reader.readln());
+		assertEquals(5, reader.getCount());
+	}
+
+	@Test public void tfilterProjected()throws IOException{
+		String in="id,name\n1,Anna\n2,Bob\n3,Andreu\n";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.addFilter(1, FieldFilter.startsWith("An"));
+		reader.setColumns("id");
+		assertArrayEquals(new Object[]{1}, reader.readln());
+		assertArrayEquals(new Object[]{3}, reader.readln());
+		assertEquals(null, reader.readln());
+	}
+
+	@Test public void tfilterStream()throws IOException{
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<20000; i++)
+			builder.append(i).append(",\"a,\"\"b\",").append(i%10).append('\n');
+		CSVReader reader=new CSVReader(new StringReader(builder.toString()));
+		reader.addFilter(2, FieldFilter.equalTo("7"));
+		assertEquals(2000, reader.stream().parallel().count());
+	}
+
+	@Test(expected=MalformedCSVException.class)
+	public void tfilterStrict()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("a,\"b"));
+		reader.setStrict(true);
+		reader.addFilter(0, FieldFilter.equalTo("x"));
+		reader.readln();
+	}
+
 	@Test public void testClass() throws IOException {
 	    CSVReader cr=getTestFile();
 		Object[] line=cr.readln();
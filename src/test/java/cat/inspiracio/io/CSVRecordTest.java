@@ -0,0 +1,172 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static cat.inspiracio.io.ColumnType.BOOLEAN;
+import static cat.inspiracio.io.ColumnType.DOUBLE;
+import static cat.inspiracio.io.ColumnType.INT;
+import static cat.inspiracio.io.ColumnType.LONG;
+import static cat.inspiracio.io.ColumnType.SKIP;
+import static cat.inspiracio.io.ColumnType.STRING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class CSVRecordTest {
+
+	/** next() with schema */
+	@Test public void tschema()throws IOException{
+		String in="a,1,x,-1.5,12345678901,TRUE\n\"b\"\"\",\"2,000\",y,0.1,-2,false\n";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.setSchema(STRING, INT, SKIP, DOUBLE, LONG, BOOLEAN);
+
+		CSVRecord r=reader.next();
+		assertEquals(6, r.size());
+		assertEquals("a", r.getString(0));
+		assertEquals(1, r.getInt(1));
+		assertEquals(-1.5, r.getDouble(3), 0);
+		assertEquals(12345678901L, r.getLong(4));
+		assertTrue(r.getBoolean(5));
+
+		CSVRecord s=reader.next();
+		assertSame(r, s);
+		assertEquals("b\"", s.getString(0));
+		assertEquals(2000, s.getInt(1));
+		assertEquals(0.1, s.getDouble(3), 0);
+		assertEquals(-2, s.getLong(4));
+		assertFalse(s.getBoolean(5));
+
+		assertNull(reader.next());
+		assertEquals(2, reader.getCount());
+	}
+
+	/** Same values as readln() */
+	@Test public void tcompatible()throws IOException{
+		String in="1.0,-0,1E3,7,0.33333333333333333333,1,234.5\n";
+		Object[] line=new CSVReader(new StringReader(in)).readln();
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.setSchema(INT, INT, INT, DOUBLE, DOUBLE, DOUBLE);
+		CSVRecord r=reader.next();
+		assertEquals(line[0], r.getInt(0));
+		assertEquals(line[1], r.getInt(1));
+		assertEquals(line[2], r.getInt(2));
+		assertEquals(((Number)line[3]).doubleValue(), r.getDouble(3), 0);
+		assertEquals(line[4], r.getDouble(4));
+		assertEquals(((Number)line[5]).doubleValue(), r.getDouble(5), 0);
+	}
+
+	/** Empty and "null" are null. */
+	@Test public void tnull()throws IOException{
+		String in=",null,,null\n";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.setSchema(INT, DOUBLE, STRING, STRING);
+		CSVRecord r=reader.next();
+		assertTrue(r.isNull(0));
+		assertEquals(0, r.getInt(0));
+		assertTrue(r.isNull(1));
+		assertFalse(r.isNull(2));
+		assertEquals("", r.getString(2));
+		assertTrue(r.isNull(3));
+		assertNull(r.getString(3));
+	}
+
+	/** Lenient: a field of the wrong type is null. Strict: it throws. */
+	@Test public void tbad()throws IOException{
+		String in="x,1\n";
+		CSVReader reader=new CSVReader(new StringReader(in));
+		reader.setSchema(INT, INT);
+		CSVRecord r=reader.next();
+		assertTrue(r.isNull(0));
+		assertEquals(1, r.getInt(1));
+
+		reader=new CSVReader(new StringReader(in));
+		reader.setSchema(INT, INT);
+		reader.setStrict(true);
+		try{
+			reader.next();
+			fail();
+		}catch(MalformedCSVException e){
+			assertEquals(1, e.getRecord());
+		}
+	}
+
+	/** Getter for another type */
+	@Test(expected=IllegalArgumentException.class)
+	public void twrongGetter()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("1\n"));
+		reader.setSchema(DOUBLE);
+		reader.next().getInt(0);
+	}
+
+	/** A short record does not show values of the longer record before it. */
+	@Test public void tshort()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("1,2,2.5\n3\n"));
+		reader.setSchema(LONG, LONG, DOUBLE);
+		CSVRecord r=reader.next();
+		assertEquals(2, r.getLong(1));
+		assertEquals(2.5, r.getDouble(2), 0);
+		r=reader.next();
+		assertEquals(3, r.getLong(0));
+		try{
+			r.getLong(1);
+			fail();
+		}catch(IndexOutOfBoundsException e){}
+		try{
+			r.getDouble(2);
+			fail();
+		}catch(IndexOutOfBoundsException e){}
+		try{
+			r.getDouble(1);
+			fail();
+		}catch(IndexOutOfBoundsException e){}
+	}
+
+	/** get() views the fields without copying them. */
+	@Test public void tget()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("one,\"t\"\"wo\",3\nfour,,6\n"));
+		CSVRecord r=reader.next();
+		CharSequence one=r.get(0);
+		assertEquals("one", one.toString());
+		assertEquals("t\"wo", r.get(1).toString());
+		assertEquals('w', r.get(1).charAt(2));
+		assertEquals("wo", r.get(1).subSequence(2, 4).toString());
+		assertEquals(3, r.getObject(2));
+
+		r=reader.next();
+		assertSame(one, r.get(0));
+		assertEquals("four", one.toString());
+		assertEquals(0, r.get(1).length());
+		assertEquals(6, r.getObject(2));
+	}
+
+	/** Without schema, all columns are STRING. */
+	@Test public void tnoSchema()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("1,two\n"));
+		CSVRecord r=reader.next();
+		assertEquals(STRING, r.getType(0));
+		assertEquals("1", r.getString(0));
+		assertEquals("two", r.getString(1));
+	}
+}
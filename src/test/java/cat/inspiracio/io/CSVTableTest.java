@@ -0,0 +1,150 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CSVTableTest{
+
+	private static CSVTable table(String csv)throws IOException{
+		return CSVTable.read(new CSVReader(new StringReader(csv)));
+	}
+
+	@Test public void ttypes()throws IOException{
+		CSVTable table=table("1,2.5,true,red,3000000000\n2,,FALSE,\"blue\",null\n3,1,null,red,4\n");
+		assertEquals(3, table.getRowCount());
+		assertEquals(5, table.getColumnCount());
+		assertEquals(ColumnType.INT, table.getType(0));
+		assertEquals(ColumnType.DOUBLE, table.getType(1));
+		assertEquals(ColumnType.BOOLEAN, table.getType(2));
+		assertEquals(ColumnType.STRING, table.getType(3));
+		assertEquals(ColumnType.LONG, table.getType(4));
+
+		assertArrayEquals(new int[]{1, 2, 3}, table.getInts(0));
+		assertArrayEquals(new double[]{2.5, 0, 1}, table.getDoubles(1), 0);
+		assertTrue(table.isNull(1, 1));
+		assertEquals("[true, false, false]", Arrays.toString(table.getBooleans(2)));
+		assertTrue(table.isNull(2, 2));
+		assertEquals("red", table.getString(0, 3));
+		assertEquals("blue", table.getString(1, 3));
+		assertArrayEquals(new String[]{"red", "blue"}, table.getDictionary(3));
+		assertArrayEquals(new int[]{0, 1, 0}, table.getCodes(3));
+		assertEquals(3000000000L, table.getLong(0, 4));
+		assertEquals(4L, table.getObject(2, 4));
+		assertNull(table.getObject(1, 4));
+		assertEquals(3, table.getDouble(2, 0), 0);
+	}
+
+	@Test public void twiden()throws IOException{
+		CSVTable table=table("1,1,1,\n3000000000,2,true,\n2.5,,x,\n");
+		assertEquals(ColumnType.DOUBLE, table.getType(0));
+		assertArrayEquals(new double[]{1, 3000000000.0, 2.5}, table.getDoubles(0), 0);
+		assertEquals(ColumnType.INT, table.getType(1));
+		assertEquals(ColumnType.STRING, table.getType(2));
+		assertEquals("1", table.getString(0, 2));
+		assertEquals("true", table.getString(1, 2));
+		assertEquals("x", table.getString(2, 2));
+		assertEquals(ColumnType.STRING, table.getType(3));
+		assertEquals("", table.getString(0, 3));
+	}
+
+	/** Widening after more null rows than the values array holds */
+	@Test public void twidenAfterNulls()throws IOException{
+		StringBuilder nulls=new StringBuilder();
+		for(int i=0; i<19; i++)
+			nulls.append('\n');
+
+		CSVTable table=table("1\n" + nulls + "5000000000\n");
+		assertEquals(ColumnType.LONG, table.getType(0));
+		assertEquals(21, table.getRowCount());
+		assertEquals(1, table.getLong(0, 0));
+		assertTrue(table.isNull(10, 0));
+		assertEquals(5000000000L, table.getLong(20, 0));
+
+		table=table("1\n" + nulls + "2.5\n");
+		assertEquals(ColumnType.DOUBLE, table.getType(0));
+		assertEquals(1, table.getDouble(0, 0), 0);
+		assertEquals(2.5, table.getDouble(20, 0), 0);
+
+		table=table("5000000000\n" + nulls + "2.5\n");
+		assertEquals(ColumnType.DOUBLE, table.getType(0));
+		assertEquals(5000000000.0, table.getDouble(0, 0), 0);
+
+		table=table("1\n1,2\n" + nulls + nulls + "1,5000000000\n");//ragged
+		assertEquals(ColumnType.LONG, table.getType(1));
+		assertEquals(2, table.getLong(1, 1));
+		assertEquals(5000000000L, table.getLong(40, 1));
+	}
+
+	/** Empty fields before a column becomes STRING are "". */
+	@Test public void tempty()throws IOException{
+		CSVTable table=table("1,\n2,null\n3,a\n");
+		assertEquals(ColumnType.STRING, table.getType(1));
+		assertEquals("", table.getString(0, 1));
+		assertNull(table.getString(1, 1));
+		assertEquals("a", table.getString(2, 1));
+	}
+
+	/** Records of different lengths */
+	@Test public void tragged()throws IOException{
+		CSVTable table=table("1\n2,5\n3\n");
+		assertEquals(2, table.getColumnCount());
+		assertTrue(table.isNull(0, 1));
+		assertEquals(5, table.getInt(1, 1));
+		assertTrue(table.isNull(2, 1));
+	}
+
+	@Test public void theader()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("id,name,price\n1,a,2.5\n2,b,3\n"));
+		reader.setColumns("price", "id");
+		CSVTable table=CSVTable.read(reader);
+		assertEquals(0, table.getHeader().indexOf("price"));
+		assertEquals(1, table.getHeader().indexOf("id"));
+		assertArrayEquals(new double[]{2.5, 3}, table.getDoubles(0), 0);
+		assertArrayEquals(new int[]{1, 2}, table.getInts(1));
+	}
+
+	/** Same values as readln(), for columns that do not widen to STRING.
+	 * Integers in a DOUBLE column are doubles. */
+	@Test public void treadln()throws IOException{
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<5000; i++)
+			builder.append(i).append(',').append(i*0.25).append(',').append(i%2==0).append(",c").append(i%7).append('\n');
+		String csv=builder.toString();
+		CSVTable table=table(csv);
+		CSVReader reader=new CSVReader(new StringReader(csv));
+		for(int row=0; row<5000; row++){
+			Object[] record=reader.readln();
+			assertEquals(record[0], table.getObject(row, 0));
+			assertEquals(((Number)record[1]).doubleValue(), table.getDouble(row, 1), 0);
+			assertEquals(record[2], table.getObject(row, 2));
+			assertEquals(record[3], table.getObject(row, 3));
+		}
+		assertEquals(7, table.getDictionary(3).length);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void twrongType()throws IOException{
+		table("1\n").getDoubles(0);
+	}
+}
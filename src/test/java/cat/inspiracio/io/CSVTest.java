@@ -16,6 +16,7 @@ limitations under the License.
 */
 package cat.inspiracio.io;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
@@ -53,4 +54,22 @@ public class CSVTest {
 		assertEquals(record[6], "\"Hello\"");
 	}
 	
+	/** Every quoting policy round-trips through CSVReader. */
+	@Test public void tQuoting() throws IOException{
+		Object[] fields={null, true, false, -1, 123456789, -1.3, "\"Hello\"", "a,b", "two\r\nlines", "", "x y", "'"};
+		for(Quoting quoting : Quoting.values()){
+			Writer w=new StringWriter();
+			CSVWriter cw=new CSVWriter(w);
+			cw.setQuoting(quoting);
+			cw.writeln(fields);
+			cw.writeln("");
+			cw.close();
+
+			CSVReader cr=new CSVReader(new StringReader(w.toString()));
+			assertArrayEquals(quoting.toString(), fields, cr.readln());
+			assertArrayEquals(quoting.toString(), new Object[]{""}, cr.readln());
+			assertEquals(null, cr.readln());
+		}
+	}
+
 }
@@ -114,4 +114,127 @@ public class CSVWriterTest extends CSVTest{
 	    assertEquals(s, e);
 	}	
 	
+	/** setQuoting(MINIMAL) */
+	@Test public void tminimal() throws IOException{
+		Writer writer=new StringWriter();
+		CSVWriter cw=new CSVWriter(writer);
+		cw.setQuoting(Quoting.MINIMAL);
+		cw.writeln("bla", 1, -1.5, true, null, "a,b", "say \"hi\"", "two\nlines", "", "x;y");
+	    assertEquals("bla,1,-1.5,true,null,\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\",,x;y" + NL, writer.toString());
+	}
+
+	/** setQuoting(NON_NUMERIC) */
+	@Test public void tnonNumeric() throws IOException{
+		Writer writer=new StringWriter();
+		CSVWriter cw=new CSVWriter(writer);
+		cw.setQuoting(Quoting.NON_NUMERIC);
+		cw.setSeparator(';');
+		cw.writeln("bla", 1, -1.5, true, "2");
+	    assertEquals("\"bla\";1;-1.5;\"true\";\"2\"" + NL, writer.toString());
+	}
+
+	/** Typed writes give the same output as write(Object...) */
+	@Test public void ttyped() throws IOException{
+		long[] longs={0, 1, -1, 9, 10, -10, 123456789, Integer.MIN_VALUE, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE};
+		double[] doubles={0.0, -0.0, 1.5, -12345678.9, 0.1, 1e-10, 1e300, Double.NaN, Double.NEGATIVE_INFINITY};
+		for(Quoting quoting : Quoting.values()){
+			for(char separator : new char[]{',', '-'}){
+				Writer typed=new StringWriter();
+				Writer objects=new StringWriter();
+				CSVWriter t=new CSVWriter(typed);
+				CSVWriter o=new CSVWriter(objects);
+				for(CSVWriter w : new CSVWriter[]{t, o}){
+					w.setQuoting(quoting);
+					w.setSeparator(separator);
+				}
+				for(long n : longs){
+					t.writeLong(n);
+					o.write(n);
+					if(Integer.MIN_VALUE<=n && n<=Integer.MAX_VALUE){
+						t.writeInt((int)n);
+						o.write((int)n);
+					}
+				}
+				for(double d : doubles){
+					t.writeDouble(d);
+					o.write(d);
+				}
+				t.writeBoolean(true);
+				t.writeString("a,b");
+				t.endRecord();
+				o.writeln(true, "a,b");
+				t.close();
+				o.close();
+				assertEquals(objects.toString(), typed.toString());
+			}
+		}
+	}
+
+	/** A string longer than the buffer, with delimiters across its boundaries */
+	@Test public void tlong() throws IOException{
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<30000; i++)
+			builder.append(i%1000==0 ? '"' : 'x');
+		String field=builder.toString();
+		Writer writer=new StringWriter();
+		CSVWriter cw=new CSVWriter(writer);
+		cw.writeln(field, 1);
+		String expected="\"" + field.replace("\"", "\"\"") + "\",\"1\"" + NL;
+		assertEquals(expected, writer.toString());
+	}
+
+	/** Default: flushes after every record */
+	@Test public void tflushRecord() throws IOException{
+		Flushes writer=new Flushes();
+		CSVWriter cw=new CSVWriter(writer);
+		for(int i=0; i<10; i++)
+			cw.writeln(i);
+		assertEquals(10, writer.flushes);
+	}
+
+	/** setFlushRecords() */
+	@Test public void tflushRecords() throws IOException{
+		Flushes writer=new Flushes();
+		CSVWriter cw=new CSVWriter(writer);
+		cw.setFlushRecords(4);
+		for(int i=0; i<10; i++)
+			cw.writeln(i);
+		assertEquals(2, writer.flushes);
+		assertEquals(8*(3+NL.length()), writer.toString().length());
+		cw.close();
+		assertEquals(10*(3+NL.length()), writer.toString().length());
+	}
+
+	/** setFlushChars() */
+	@Test public void tflushChars() throws IOException{
+		Flushes writer=new Flushes();
+		CSVWriter cw=new CSVWriter(writer);
+		cw.setFlushRecords(0);
+		cw.setFlushChars(10);
+		for(int i=0; i<10; i++)
+			cw.writeln("abcd");
+		//A record is 7 or 8 chars, so it flushes after every second record.
+		assertEquals(5, writer.flushes);
+	}
+
+	/** Only on flush() */
+	@Test public void tflushManual() throws IOException{
+		Flushes writer=new Flushes();
+		CSVWriter cw=new CSVWriter(writer);
+		cw.setFlushRecords(0);
+		for(int i=0; i<10; i++)
+			cw.writeln(i);
+		assertEquals(0, writer.flushes);
+		assertEquals("", writer.toString());
+		cw.flush();
+		assertEquals(1, writer.flushes);
+		assertEquals(10*(3+NL.length()), writer.toString().length());
+	}
+
+	/** Counts flushes */
+	static class Flushes extends StringWriter{
+		int flushes=0;
+		@Override public void flush(){flushes++;}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class ConcurrentCSVWriterTest{
+
+	/** 64 threads, every record intact and in order per thread */
+	@Test public void tstress() throws Exception{
+		final int THREADS=64;
+		final int RECORDS=2000;
+		StringWriter out=new StringWriter();
+		final ConcurrentCSVWriter writer=new ConcurrentCSVWriter(out);
+		writer.setQuoting(Quoting.MINIMAL);
+		Thread[] threads=new Thread[THREADS];
+		for(int t=0; t<THREADS; t++){
+			final int thread=t;
+			threads[t]=new Thread(){
+				@Override public void run(){
+					try{
+						for(int i=0; i<RECORDS; i++)
+							writer.writeln(thread, i, text(thread, i), "x\"y", i%3==0);
+					}catch(IOException e){
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		writer.close();
+
+		int[] next=new int[THREADS];
+		CSVReader reader=new CSVReader(new StringReader(out.toString()));
+		reader.setStrict(true);
+		Object[] record;
+		while((record=reader.readln())!=null){
+			assertEquals(5, record.length);
+			int thread=(Integer)record[0];
+			int i=(Integer)record[1];
+			assertEquals(next[thread]++, i);
+			assertEquals(text(thread, i), record[2]);
+			assertEquals("x\"y", record[3]);
+			assertEquals(i%3==0, record[4]);
+		}
+		for(int n : next)
+			assertEquals(RECORDS, n);
+	}
+
+	/** Many short-lived threads: the stripes of dead threads are
+	 * written and forgotten. */
+	@Test public void tchurn() throws Exception{
+		final int THREADS=1000;
+		StringWriter out=new StringWriter();
+		final ConcurrentCSVWriter writer=new ConcurrentCSVWriter(out);
+		for(int t=0; t<THREADS; t++){
+			final int thread=t;
+			Thread th=new Thread(){
+				@Override public void run(){
+					try{
+						writer.writeln(thread, "x");
+					}catch(IOException e){
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			th.start();
+			th.join();
+			assertTrue(writer.getStripes()<=2);
+		}
+		writer.flush();
+		assertEquals(0, writer.getStripes());
+
+		boolean[] seen=new boolean[THREADS];
+		CSVReader reader=new CSVReader(new StringReader(out.toString()));
+		Object[] record;
+		int n=0;
+		while((record=reader.readln())!=null){
+			seen[(Integer)record[0]]=true;
+			n++;
+		}
+		assertEquals(THREADS, n);
+		for(boolean b : seen)
+			assertTrue(b);
+		writer.close();
+	}
+
+	/** Field with separators, line breaks and varying length */
+	private static String text(int thread, int i){
+		StringBuilder builder=new StringBuilder("t"+thread+",\n");
+		for(int k=0; k<i%50; k++)
+			builder.append('a');
+		return builder.toString();
+	}
+
+	/** flush() writes the records of the stripes */
+	@Test public void tflush() throws IOException{
+		StringWriter out=new StringWriter();
+		ConcurrentCSVWriter writer=new ConcurrentCSVWriter(out);
+		writer.writeln("a", 1);
+		assertEquals("", out.toString());
+		writer.flush();
+		assertEquals("\"a\",\"1\"" + System.getProperty("line.separator"), out.toString());
+		writer.close();
+	}
+
+	@Test(expected=IllegalStateException.class) public void tclosed() throws IOException{
+		ConcurrentCSVWriter writer=new ConcurrentCSVWriter(new StringWriter());
+		writer.close();
+		writer.writeln("a");
+	}
+}
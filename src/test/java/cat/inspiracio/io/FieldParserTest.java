@@ -0,0 +1,86 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Checks that the fast FieldParser.parse() returns exactly what
+ * parsing with NumberFormat returns. */
+public class FieldParserTest {
+
+	private FieldParser parser=new FieldParser();
+
+	/** Compares value and class. */
+	private void compatible(String field){
+		Object expected=parser.parseWithNumberFormat(field);
+		Object actual=parser.parse(field);
+		assertEquals(field, expected, actual);
+		if(expected!=null)
+			assertEquals(field, expected.getClass(), actual.getClass());
+	}
+
+	@Test public void tstrings(){
+		String[] fields={"", "a", "bla", "Hello World", "2010-10-15T18:15:00Z", "null", "NULL", "Null", "nul", "nulls",
+				"true", "TRUE", "True", "tRuE", "truee", "tru", "false", "FALSE", "False", "f", "t",
+				"Élodie", "ñ", "x1", "a,b", "-", "--", "-a", " 1", "1 ", "+1", "NaN", "NaNa", "-NaN", "Na", "∞", "-∞"};
+		for(String field : fields)
+			compatible(field);
+	}
+
+	@Test public void tintegers(){
+		String[] fields={"0", "1", "-1", "-0", "007", "123456789", "2147483647", "2147483648", "-2147483648", "-2147483649",
+				"999999999999999999", "9223372036854775807", "-9223372036854775808", "9223372036854775808",
+				"99999999999999999999", "1,234", "1,234,567", "12,34", "1,2,3", "1,,2", ",123", "1,", "1,a", "-1,000"};
+		for(String field : fields)
+			compatible(field);
+	}
+
+	@Test public void tdecimals(){
+		String[] fields={"1.5", "-1.5", "0.1", "0.10", "1.0", "-1.0", "0.0", "-0.0", "-0.00", "1.", ".5", "-.5",
+				"1,234.5", "12,34.5", "1.5,3", "1.2.3", "0.33333333333333333333333333333333", "-12345678.9",
+				"1E5", "1e5", "1.5E-3", "1.5e3", "12345678901.00", "2147483648.0", "1.5x", "1.x"};
+		for(String field : fields)
+			compatible(field);
+	}
+
+	/** Random fields made of the characters that matter to numbers. */
+	@Test public void trandom(){
+		String alphabet="0123456789000,,..--Ea";
+		Random random=new Random(42);
+		for(int i=0; i<100000; i++){
+			int length=1 + random.nextInt(12);
+			StringBuilder builder=new StringBuilder();
+			for(int j=0; j<length; j++)
+				builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			compatible(builder.toString());
+		}
+	}
+
+	/** Random doubles, as Java and as grouped US numbers. */
+	@Test public void trandomDoubles(){
+		Random random=new Random(7);
+		for(int i=0; i<10000; i++){
+			double d=(random.nextDouble()-0.5) * Math.pow(10, random.nextInt(16));
+			compatible(Double.toString(d));
+			compatible(String.format(java.util.Locale.US, "%,.6f", d));
+		}
+	}
+}
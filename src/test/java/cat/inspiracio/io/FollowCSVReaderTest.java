@@ -0,0 +1,127 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class FollowCSVReaderTest {
+
+	/** Appends to a file. */
+	static void append(File file, String csv)throws IOException{
+		OutputStream out=new FileOutputStream(file, true);
+		out.write(csv.getBytes(StandardCharsets.UTF_8));
+		out.close();
+	}
+
+	@Test public void tpartial()throws IOException{
+		File file=MappedCSVReaderTest.file("a,1\nb,", StandardCharsets.UTF_8);
+		FollowCSVReader csv=new FollowCSVReader(file);
+		assertArrayEquals(new Object[]{"a", 1}, csv.readln());
+		assertNull(csv.readln());//b, is not complete
+
+		append(file, "2");
+		assertNull(csv.readln());
+		append(file, "\n\"multi");
+		assertArrayEquals(new Object[]{"b", 2}, csv.readln());
+		assertNull(csv.readln());
+
+		append(file, "\nline\"\"\",");
+		assertNull(csv.readln());//the delimited field is closed, but the record is not
+		append(file, "\u20ac\r");
+		assertNull(csv.readln());//CR may be followed by LF
+		append(file, "\nc\r");
+		assertArrayEquals(new Object[]{"multi\nline\"", "\u20ac"}, csv.readln());
+		assertNull(csv.readln());
+		append(file, "d\n");
+		assertArrayEquals(new Object[]{"c"}, csv.readln());
+		assertArrayEquals(new Object[]{"d"}, csv.readln());
+		assertNull(csv.readln());
+		assertEquals(5, csv.getCount());
+		assertEquals(file.length(), csv.getOffset());
+		csv.close();
+	}
+
+	@Test public void tcheckpoint()throws IOException{
+		File file=MappedCSVReaderTest.file("a\nb\nc", StandardCharsets.UTF_8);
+		File checkpoint=File.createTempFile("csv", ".checkpoint");
+		checkpoint.deleteOnExit();
+		FollowCSVReader csv=new FollowCSVReader(file);
+		csv.setSchema(ColumnType.STRING);
+		assertEquals("a", csv.next().getString(0));
+		csv.checkpoint(checkpoint);
+		csv.close();
+
+		append(file, "\n");
+		csv=FollowCSVReader.resume(file, checkpoint);
+		assertEquals(1, csv.getCount());
+		assertEquals(2, csv.getOffset());
+		assertArrayEquals(new Object[]{"b"}, csv.readln());
+		assertArrayEquals(new Object[]{"c"}, csv.readln());
+		assertNull(csv.readln());
+		assertEquals(3, csv.getCount());
+		csv.close();
+	}
+
+	@Test public void tawait()throws Exception{
+		final File file=MappedCSVReaderTest.file("", StandardCharsets.UTF_8);
+		FollowCSVReader csv=new FollowCSVReader(file);
+		csv.setMaxBackoff(10, TimeUnit.MILLISECONDS);
+		assertFalse(csv.await(20, TimeUnit.MILLISECONDS));
+		Thread writer=new Thread(){
+			@Override public void run(){
+				try{
+					for(int i=0; i<100; i++){
+						append(file, i + ",\"x\n");
+						append(file, "y\"\n");
+					}
+				}catch(IOException e){
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		writer.start();
+		for(int i=0; i<100; i++){
+			assertTrue(csv.await(10, TimeUnit.SECONDS));
+			assertArrayEquals(new Object[]{i, "x\ny"}, csv.readln());
+		}
+		writer.join();
+		assertNull(csv.readln());
+		csv.close();
+	}
+
+	@Test(expected=IOException.class)
+	public void ttruncated()throws IOException{
+		File file=MappedCSVReaderTest.file("a\nb\n", StandardCharsets.UTF_8);
+		FollowCSVReader csv=new FollowCSVReader(file);
+		csv.readln();
+		new FileOutputStream(file).close();
+		csv.readln();
+	}
+}
@@ -0,0 +1,181 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+public class GzipReaderTest{
+
+	/** CSV with multi-byte characters, bigger than many blocks */
+	private static String csv(int records){
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<records; i++)
+			builder.append(i).append(",\"Gr\u00fc\u00dfe \u20ac\n\ud83d\ude00\",").append(i*0.5).append('\n');
+		return builder.toString();
+	}
+
+	private static File temp()throws IOException{
+		File file=File.createTempFile("csv", ".csv.gz");
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static String read(Reader reader)throws IOException{
+		StringWriter out=new StringWriter();
+		char[] buffer=new char[1000];
+		int n;
+		while(0<=(n=reader.read(buffer)))
+			out.write(buffer, 0, n);
+		reader.close();
+		return out.toString();
+	}
+
+	/** Writes with CSVWriter into blocks, reads in parallel with CSVReader */
+	@Test public void tblocks()throws IOException{
+		String csv=csv(50000);
+		File file=temp();
+		OutputStream out=new BlockGzipOutputStream(new FileOutputStream(file));
+		CSVWriter writer=new CSVWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		writer.setFlushRecords(0);
+		writer.setQuoting(Quoting.MINIMAL);
+		CSVReader source=new CSVReader(new StringReader(csv));
+		Object[] record;
+		while((record=source.readln())!=null)
+			writer.writeln(record);
+		writer.close();
+
+		CSVReader expected=new CSVReader(new StringReader(csv));
+		CSVReader actual=new CSVReader(new GzipReader(file));
+		int n=0;
+		while((record=expected.readln())!=null){
+			assertArrayEquals(record, actual.readln());
+			n++;
+		}
+		assertNull(actual.readln());
+		assertEquals(50000, n);
+	}
+
+	/** Blocks are plain gzip for other tools */
+	@Test public void tcompatible()throws IOException{
+		String csv=csv(20000);
+		File file=temp();
+		write(file, csv);
+		assertEquals(csv, read(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8)));
+		assertEquals(csv, read(new GzipReader(file)));
+	}
+
+	/** Every block fits into 64 KiB, also for incompressible data */
+	@Test public void tblockSize()throws IOException{
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+		OutputStream out=new BlockGzipOutputStream(bytes, 9);
+		java.util.Random random=new java.util.Random(1);
+		byte[] noise=new byte[300000];
+		random.nextBytes(noise);
+		out.write(noise);
+		out.close();
+		byte[] gz=bytes.toByteArray();
+		int blocks=0;
+		for(int i=0; i<gz.length; blocks++){
+			int size=((gz[i+16]&0xff) | (gz[i+17]&0xff)<<8) + 1;
+			assertTrue(size<=0x10000);
+			i+=size;
+		}
+		assertEquals(6, blocks);//5 full, and the empty block
+	}
+
+	/** Ordinary gzip is decompressed sequentially */
+	@Test public void tgzip()throws IOException{
+		String csv=csv(20000);
+		File file=temp();
+		OutputStream out=new GZIPOutputStream(new FileOutputStream(file));
+		out.write(csv.getBytes(StandardCharsets.UTF_8));
+		out.close();
+		assertEquals(csv, read(new GzipReader(file)));
+	}
+
+	@Test public void tempty()throws IOException{
+		File file=temp();
+		write(file, "");
+		assertEquals("", read(new GzipReader(file)));
+	}
+
+	@Test(expected=ZipException.class) public void tcorrupt()throws IOException{
+		File file=temp();
+		write(file, csv(1000));
+		byte[] bytes=new byte[(int)file.length()];
+		InputStream in=new FileInputStream(file);
+		new java.io.DataInputStream(in).readFully(bytes);
+		in.close();
+		bytes[100]^=0x55;
+		OutputStream out=new FileOutputStream(file);
+		out.write(bytes);
+		out.close();
+		read(new GzipReader(file));
+	}
+
+	/** After a failure, every read throws it again instead of waiting. */
+	@Test public void tcorruptTwice()throws IOException{
+		File file=temp();
+		OutputStream out=new GZIPOutputStream(new FileOutputStream(file));
+		out.write(csv(10).getBytes(StandardCharsets.UTF_8));
+		out.close();
+		byte[] bytes=new byte[(int)file.length()];
+		InputStream in=new FileInputStream(file);
+		new java.io.DataInputStream(in).readFully(bytes);
+		in.close();
+		bytes[bytes.length-8]^=0x55;//CRC in the trailer
+		out=new FileOutputStream(file);
+		out.write(bytes);
+		out.close();
+
+		GzipReader reader=new GzipReader(file);
+		char[] buffer=new char[100000];
+		for(int i=0; i<2; i++){
+			try{
+				while(0<=reader.read(buffer, 0, buffer.length));
+				fail();
+			}catch(ZipException e){}
+		}
+		reader.close();
+	}
+
+	/** Writes text into blocks. */
+	private static void write(File file, String text)throws IOException{
+		OutputStream out=new BlockGzipOutputStream(new FileOutputStream(file));
+		out.write(text.getBytes(StandardCharsets.UTF_8));
+		out.close();
+	}
+}
@@ -0,0 +1,102 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class HeaderTest{
+
+	@Test public void tindexOf(){
+		String[] names=new String[300];
+		for(int i=0; i<names.length; i++)
+			names[i]="column " + i;
+		Header header=new Header(names);
+		assertEquals(300, header.size());
+		for(int i=0; i<names.length; i++){
+			assertEquals(i, header.indexOf("column " + i));
+			assertEquals("column " + i, header.getName(i));
+		}
+		assertEquals(-1, header.indexOf("column 300"));
+		assertEquals(-1, header.indexOf(""));
+	}
+
+	/** Same hash codes, duplicate names */
+	@Test public void tcollisions(){
+		Header header=new Header(new String[]{"Aa", "BB", "x", "Aa", "AaAa", "BBBB"});
+		assertEquals(0, header.indexOf("Aa"));
+		assertEquals(1, header.indexOf("BB"));
+		assertEquals(2, header.indexOf("x"));
+		assertEquals(4, header.indexOf("AaAa"));
+		assertEquals(5, header.indexOf("BBBB"));
+		assertEquals(-1, header.indexOf("AaBB"));
+	}
+
+	@Test public void tempty(){
+		Header header=new Header(new String[0]);
+		assertEquals(0, header.size());
+		assertEquals(-1, header.indexOf("a"));
+	}
+
+	@Test public void treadln()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("id,\"name\"\n1,Anna\n"));
+		reader.setHeader(true);
+		assertArrayEquals(new Object[]{1, "Anna"}, reader.readln());
+		assertEquals(1, reader.getHeader().indexOf("name"));
+		assertNull(reader.readln());
+	}
+
+	@Test public void tnext()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("id,name,score\n1,Anna,2.5\n2,Bob,null\n"));
+		reader.setHeader(true);
+		reader.setSchema(ColumnType.INT, ColumnType.STRING, ColumnType.DOUBLE);
+		CSVRecord record=reader.next();
+		assertEquals(1, record.getInt("id"));
+		assertEquals("Anna", record.getString("name"));
+		assertEquals(2.5, record.getDouble("score"), 0);
+		record=reader.next();
+		assertEquals("Bob", record.get("name").toString());
+		assertTrue(record.isNull("score"));
+		try{
+			record.getString("age");
+			fail();
+		}catch(IllegalArgumentException e){}
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void tnoHeader()throws IOException{
+		new CSVReader(new StringReader("a\n")).next().getString("a");
+	}
+
+	@Test public void tdeduplicate()throws IOException{
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<100; i++)
+			builder.append(i).append(',').append(i%2==0 ? "red" : "\"green\"").append('\n');
+		CSVReader reader=new CSVReader(new StringReader(builder.toString()));
+		reader.setDeduplicate(true);
+		Object[] first=reader.readln();
+		Object[] second=reader.readln();
+		Object[] third=reader.readln();
+		assertEquals("red", first[1]);
+		assertEquals("green", second[1]);
+		assertSame(first[1], third[1]);
+	}
+}
@@ -0,0 +1,140 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class KeyIndexTest {
+
+	static final String CSV="id,name\n"
+			+ "p3,\"three\nlines\"\n"
+			+ "p1,one\n"
+			+ "\"p,2\",\"Gr\u00fc\u00dfe\"\n"
+			+ "p1,again\n"
+			+ "\"\u20ac\",euro\n";
+
+	@Test public void tget()throws IOException{
+		File file=MappedCSVReaderTest.file(CSV, StandardCharsets.UTF_8);
+		KeyIndex index=KeyIndex.build(new MappedCSVReader(file), 0);
+		assertEquals(6, index.getRows());
+		assertEquals(6, index.size());
+		MappedCSVReader reader=new MappedCSVReader(file);
+		assertArrayEquals(new Object[]{"p3", "three\nlines"}, index.get(reader, "p3"));
+		assertArrayEquals(new Object[]{"p1", "one"}, index.get(reader, "p1"));//the first
+		assertArrayEquals(new Object[]{"p,2", "Gr\u00fc\u00dfe"}, index.get(reader, "p,2"));
+		assertArrayEquals(new Object[]{"\u20ac", "euro"}, index.get(reader, "\u20ac"));
+		assertArrayEquals(new Object[]{"id", "name"}, index.get(reader, "id"));
+		assertNull(index.get(reader, "p2"));
+		assertEquals(-1, index.getOffset("p4"));
+		reader.close();
+	}
+
+	@Test public void tcache()throws IOException{
+		File file=MappedCSVReaderTest.file(CSV, StandardCharsets.UTF_8);
+		KeyIndex index=KeyIndex.build(new MappedCSVReader(file), 0);
+		MappedCSVReader reader=new MappedCSVReader(file);
+		Object[] record=index.get(reader, "p3");
+		assertSame(record, index.get(reader, "p3"));
+		index.setCacheSize(0);
+		assertArrayEquals(record, index.get(reader, "p3"));
+		reader.close();
+	}
+
+	@Test public void tsidecar()throws IOException{
+		File file=MappedCSVReaderTest.file(CSV, StandardCharsets.UTF_8);
+		File sidecar=File.createTempFile("csv", ".keys");
+		sidecar.deleteOnExit();
+		KeyIndex.build(new MappedCSVReader(file), 1).write(sidecar);
+		KeyIndex index=KeyIndex.read(sidecar);
+		assertEquals(1, index.getColumn());
+		assertEquals(file.length(), index.getLength());
+		MappedCSVReader reader=new MappedCSVReader(file);
+		assertArrayEquals(new Object[]{"p1", "again"}, index.get(reader, "again"));
+		assertArrayEquals(new Object[]{"p3", "three\nlines"}, index.get(reader, "three\nlines"));
+		assertArrayEquals(new Object[]{"p,2", "Gr\u00fc\u00dfe"}, index.get(reader, "Gr\u00fc\u00dfe"));
+		reader.close();
+	}
+
+	@Test public void tupdate()throws IOException{
+		File file=MappedCSVReaderTest.file(CSV, StandardCharsets.UTF_8);
+		KeyIndex index=KeyIndex.build(new MappedCSVReader(file), 0);
+		MappedCSVReader reader=new MappedCSVReader(file);
+		assertNull(index.get(reader, "p0"));
+		reader.close();
+
+		OutputStream out=new FileOutputStream(file, true);
+		out.write("p0,zero\np1,third\n".getBytes(StandardCharsets.UTF_8));
+		out.close();
+		assertEquals(2, index.update(new MappedCSVReader(file)));
+		assertEquals(8, index.getRows());
+		assertEquals(file.length(), index.getLength());
+		assertEquals(0, index.update(new MappedCSVReader(file)));
+
+		reader=new MappedCSVReader(file);
+		assertArrayEquals(new Object[]{"p0", "zero"}, index.get(reader, "p0"));
+		assertArrayEquals(new Object[]{"p1", "one"}, index.get(reader, "p1"));
+		assertArrayEquals(new Object[]{"p3", "three\nlines"}, index.get(reader, "p3"));
+		reader.close();
+	}
+
+	/** Building while a record is half written does not index it,
+	 * and update() continues at its start. */
+	@Test public void tupdatePartial()throws IOException{
+		File file=MappedCSVReaderTest.file("k1,one\nk2,tw", StandardCharsets.UTF_8);
+		KeyIndex index=KeyIndex.build(new MappedCSVReader(file), 0);
+		assertEquals(1, index.getRows());
+		assertEquals(7, index.getLength());
+		assertEquals(-1, index.getOffset("k2"));
+
+		append(file, "o\r");
+		assertEquals(0, index.update(new MappedCSVReader(file)));//the LF of CRLF may follow
+		append(file, "\nk3,three\n");
+		assertEquals(2, index.update(new MappedCSVReader(file)));
+		assertEquals(3, index.getRows());
+		assertEquals(3, index.size());
+		assertEquals(-1, index.getOffset("o"));
+		MappedCSVReader reader=new MappedCSVReader(file);
+		assertArrayEquals(new Object[]{"k2", "two"}, index.get(reader, "k2"));
+		assertArrayEquals(new Object[]{"k3", "three"}, index.get(reader, "k3"));
+		reader.close();
+	}
+
+	/** Appends to a file. */
+	private static void append(File file, String csv)throws IOException{
+		OutputStream out=new FileOutputStream(file, true);
+		out.write(csv.getBytes(StandardCharsets.UTF_8));
+		out.close();
+	}
+
+	@Test(expected=IOException.class)
+	public void ttruncated()throws IOException{
+		File file=MappedCSVReaderTest.file(CSV, StandardCharsets.UTF_8);
+		KeyIndex index=KeyIndex.build(new MappedCSVReader(file), 0);
+		index.update(new MappedCSVReader(MappedCSVReaderTest.file("id,name\n", StandardCharsets.UTF_8)));
+	}
+}
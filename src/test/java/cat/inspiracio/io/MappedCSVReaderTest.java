@@ -0,0 +1,111 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static cat.inspiracio.io.ColumnType.INT;
+import static cat.inspiracio.io.ColumnType.SKIP;
+import static cat.inspiracio.io.ColumnType.STRING;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+public class MappedCSVReaderTest {
+
+	static final String CSV="a,1,-1.5,2010-10-15T18:15:00Z,false\r\n"
+			+ "\"Gr\u00fc\u00dfe, \u20ac\",\"2,000\",\"\"\"Hello\"\"\",,null\n"
+			+ "\"multi\nline \ud83d\ude00\",true,0.33333333333333333333\r"
+			+ "last,\"x\"";
+
+	/** Writes a temporary file. */
+	static File file(String content, Charset charset)throws IOException{
+		File file=File.createTempFile("csv", ".csv");
+		file.deleteOnExit();
+		OutputStream out=new FileOutputStream(file);
+		out.write(content.getBytes(charset));
+		out.close();
+		return file;
+	}
+
+	/** Reads a file with a small window, so that records cross windows. */
+	static MappedCSVReader reader(File file, int window)throws IOException{
+		FileChannel channel=FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		return new MappedCSVReader(channel, 0, -1, StandardCharsets.UTF_8, window);
+	}
+
+	/** Same records as CSVReader */
+	void same(MappedCSVReader mapped)throws IOException{
+		CSVReader reader=new CSVReader(new StringReader(CSV));
+		Object[] expected=reader.readln();
+		while(expected!=null){
+			assertArrayEquals(expected, mapped.readln());
+			expected=reader.readln();
+		}
+		assertNull(mapped.readln());
+		assertEquals(reader.getCount(), mapped.getCount());
+		mapped.close();
+	}
+
+	@Test public void treadln()throws IOException{
+		same(new MappedCSVReader(file(CSV, StandardCharsets.UTF_8)));
+	}
+
+	@Test public void tsmallWindows()throws IOException{
+		File file=file(CSV, StandardCharsets.UTF_8);
+		for(int window=1; window<40; window++)
+			same(reader(file, window));
+	}
+
+	@Test public void tnext()throws IOException{
+		MappedCSVReader mapped=new MappedCSVReader(file(CSV, StandardCharsets.UTF_8));
+		mapped.setSchema(STRING, INT, SKIP);
+		CSVRecord r=mapped.next();
+		assertEquals("a", r.getString(0));
+		assertEquals(1, r.getInt(1));
+		assertEquals("", r.get(2).toString());
+		assertEquals("2010-10-15T18:15:00Z", r.get(3).toString());
+		r=mapped.next();
+		assertEquals("Gr\u00fc\u00dfe, \u20ac", r.getString(0));
+		assertEquals(2000, r.getInt(1));
+		assertEquals("", r.get(2).toString());//SKIP
+		assertNull(r.getString(4));
+		mapped.close();
+	}
+
+	@Test public void tlatin1()throws IOException{
+		String csv="\u00e0,\u00e9\n";
+		MappedCSVReader mapped=new MappedCSVReader(file(csv, StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1);
+		assertArrayEquals(new Object[]{"\u00e0", "\u00e9"}, mapped.readln());
+		mapped.close();
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void tutf16()throws IOException{
+		new MappedCSVReader(file("", StandardCharsets.UTF_8), StandardCharsets.UTF_16);
+	}
+}
@@ -0,0 +1,181 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+	@Test public void treader()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("a,1,2.5\n\"b\",true,null\n"));
+		Metrics metrics=new Metrics();
+		reader.setMetrics(metrics);
+		while(reader.readln()!=null);
+		assertEquals(2, metrics.get(Counter.RECORDS));
+		assertEquals(6, metrics.get(Counter.FIELDS));
+		assertEquals(22, metrics.get(Counter.CHARS));
+		assertEquals(1, metrics.get(Counter.QUOTED_FIELDS));
+		assertEquals(2, metrics.get(Counter.STRINGS));
+		assertEquals(1, metrics.get(Counter.INTEGERS));
+		assertEquals(1, metrics.get(Counter.DECIMALS));
+		assertEquals(1, metrics.get(Counter.BOOLEANS));
+		assertEquals(1, metrics.get(Counter.NULLS));
+		assertEquals(0, metrics.getRecordTimes().getCount());
+	}
+
+	@Test public void tfiltered()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("a\nb\na\n"));
+		Metrics metrics=new Metrics();
+		reader.setMetrics(metrics);
+		reader.addFilter(0, FieldFilter.equalTo("a"));
+		while(reader.next()!=null);
+		assertEquals(3, metrics.get(Counter.RECORDS));
+		assertEquals(1, metrics.get(Counter.FILTERED));
+	}
+
+	@Test public void tmalformed()throws IOException{
+		Metrics metrics=new Metrics();
+		final List<MalformedCSVException> errors=new ArrayList<>();
+		metrics.setListener(new MetricsListener(){
+			@Override public void malformed(MalformedCSVException e){errors.add(e);}
+		});
+		CSVReader reader=new CSVReader(new StringReader("a\n\"b\"x\nc\n\"d"));
+		reader.setMetrics(metrics);
+		while(reader.readln()!=null);
+		assertEquals(2, metrics.get(Counter.MALFORMED));
+		assertEquals(2, errors.size());
+
+		reader=new CSVReader(new StringReader("\"b\"x\n"));
+		reader.setStrict(true);
+		metrics=new Metrics();
+		reader.setMetrics(metrics);
+		try{
+			reader.readln();
+			fail();
+		}catch(MalformedCSVException e){
+			assertEquals(1, metrics.get(Counter.MALFORMED));
+		}
+	}
+
+	@Test public void tsampling()throws IOException{
+		StringBuilder csv=new StringBuilder();
+		for(int i=0; i<1000; i++)
+			csv.append(i).append(",x\n");
+		CSVReader reader=new CSVReader(new StringReader(csv.toString()));
+		Metrics metrics=new Metrics();
+		metrics.setSampling(10);
+		final Metrics[] finished=new Metrics[1];
+		metrics.setListener(new MetricsListener(){
+			@Override public void finished(Metrics m){finished[0]=m;}
+		});
+		reader.setMetrics(metrics);
+		while(reader.readln()!=null);
+		assertNull(reader.readln());
+		Histogram times=metrics.getRecordTimes();
+		assertEquals(100, times.getCount());
+		assertTrue(0<times.getPercentile(0.99));
+		assertTrue(times.getPercentile(0.5)<=times.getPercentile(0.99));
+		assertEquals(metrics, finished[0]);
+	}
+
+	/** Sampled records time each field by its type. */
+	@Test public void tparseTimes()throws IOException{
+		CSVReader reader=new CSVReader(new StringReader("1,2.5,\"x\",true,null,5000000000\n2,3.5,y,false,,6\n"));
+		Metrics metrics=new Metrics();
+		metrics.setSampling(1);
+		reader.setMetrics(metrics);
+		while(reader.readln()!=null);
+		assertEquals(3, metrics.getParseTimes(ColumnType.INT).getCount());
+		assertEquals(1, metrics.getParseTimes(ColumnType.LONG).getCount());
+		assertEquals(2, metrics.getParseTimes(ColumnType.DOUBLE).getCount());
+		assertEquals(2, metrics.getParseTimes(ColumnType.BOOLEAN).getCount());
+		assertEquals(3, metrics.getParseTimes(ColumnType.STRING).getCount());//x, y, and the empty field
+		assertEquals(1, metrics.get(Counter.QUOTED_FIELDS));
+
+		//projected: only the projected fields
+		reader=new CSVReader(new StringReader("1,\"x\",\"\"\n"));
+		reader.setColumns(2, 0);
+		metrics=new Metrics();
+		metrics.setSampling(1);
+		reader.setMetrics(metrics);
+		assertArrayEquals(new Object[]{"", 1}, reader.readln());
+		assertEquals(1, metrics.getParseTimes(ColumnType.INT).getCount());
+		assertEquals(1, metrics.getParseTimes(ColumnType.STRING).getCount());
+		assertEquals(3, metrics.get(Counter.FIELDS));
+		assertEquals(1, metrics.get(Counter.QUOTED_FIELDS));
+	}
+
+	/** Another thread sees the counters while the reader reads. */
+	@Test public void tthreads()throws Exception{
+		final int N=100000;
+		StringBuilder csv=new StringBuilder();
+		for(int i=0; i<N; i++)
+			csv.append(i).append('\n');
+		final CSVReader reader=new CSVReader(new StringReader(csv.toString()));
+		Metrics metrics=new Metrics();
+		reader.setMetrics(metrics);
+		Thread thread=new Thread(){
+			@Override public void run(){
+				try{
+					while(reader.next()!=null);
+				}catch(IOException e){
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		thread.start();
+		long last=0;
+		while(thread.isAlive()){
+			long records=metrics.get(Counter.RECORDS);
+			assertTrue(last<=records);
+			last=records;
+		}
+		thread.join();
+		assertEquals(N, metrics.get(Counter.RECORDS));
+	}
+
+	@Test public void twriter()throws IOException{
+		StringWriter out=new StringWriter();
+		CSVWriter writer=new CSVWriter(out);
+		Metrics metrics=new Metrics();
+		metrics.setSampling(1);
+		writer.setMetrics(metrics);
+		writer.setFlushRecords(2);
+		writer.writeln("a", 1);
+		writer.writeln("b", 2);
+		writer.writeln("c", 3);
+		writer.close();
+		assertEquals(3, metrics.get(Counter.RECORDS));
+		assertEquals(6, metrics.get(Counter.FIELDS));
+		assertEquals(out.toString().length(), metrics.get(Counter.CHARS));
+		assertEquals(1, metrics.get(Counter.FLUSHES));
+		assertEquals(1, metrics.getFlushTimes().getCount());
+		assertEquals(3, metrics.getRecordTimes().getCount());
+	}
+}
@@ -0,0 +1,132 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ParallelCSVReaderTest {
+
+	/** Records with quoted fields that contain line terminators, separators,
+	 * and escaped delimiters, so that many splits fall inside them. */
+	static String csv(int records){
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<records; i++){
+			builder.append(i).append(",\"line\none,\r\nline \"\"two\"\"\n\",");
+			builder.append(i%3==0 ? "\"\"" : "x" + i);
+			builder.append(i%2==0 ? "\r\n" : "\n");
+		}
+		return builder.toString();
+	}
+
+	static List<Object[]> sequential(String csv)throws IOException{
+		List<Object[]> records=new ArrayList<Object[]>();
+		CSVReader reader=new CSVReader(new StringReader(csv));
+		Object[] record=reader.readln();
+		while(record!=null){
+			records.add(record);
+			record=reader.readln();
+		}
+		return records;
+	}
+
+	static List<Object[]> parallel(File file, long chunkSize, boolean ordered)throws IOException{
+		List<Object[]> records=new ArrayList<Object[]>();
+		ParallelCSVReader reader=new ParallelCSVReader(file, StandardCharsets.UTF_8, new ForkJoinPool(4));
+		reader.setChunkSize(chunkSize);
+		reader.setOrdered(ordered);
+		Object[] record=reader.readln();
+		while(record!=null){
+			records.add(record);
+			record=reader.readln();
+		}
+		assertNull(reader.readln());
+		assertEquals(records.size(), reader.getCount());
+		reader.close();
+		return records;
+	}
+
+	/** Quoted multi-line fields straddling the split points */
+	@Test public void tordered()throws IOException{
+		String csv=csv(100);
+		File file=MappedCSVReaderTest.file(csv, StandardCharsets.UTF_8);
+		List<Object[]> expected=sequential(csv);
+		for(long chunkSize : new long[]{3, 5, 7, 11, 13, 64, 1000, 1000000}){
+			List<Object[]> actual=parallel(file, chunkSize, true);
+			assertEquals(expected.size(), actual.size());
+			for(int i=0; i<expected.size(); i++)
+				assertArrayEquals(expected.get(i), actual.get(i));
+		}
+	}
+
+	@Test public void tunordered()throws IOException{
+		String csv=csv(300);
+		File file=MappedCSVReaderTest.file(csv, StandardCharsets.UTF_8);
+		List<String> expected=strings(sequential(csv));
+		for(long chunkSize : new long[]{7, 100}){
+			List<String> actual=strings(parallel(file, chunkSize, false));
+			assertEquals(expected, actual);
+		}
+	}
+
+	/** Closing early cancels the chunks that are still running,
+	 * in both modes, on a pool that the reader does not own. */
+	@Test public void tcloseEarly()throws IOException{
+		File file=MappedCSVReaderTest.file(csv(300), StandardCharsets.UTF_8);
+		ForkJoinPool pool=new ForkJoinPool(2);
+		for(boolean ordered : new boolean[]{true, false}){
+			ParallelCSVReader reader=new ParallelCSVReader(file, StandardCharsets.UTF_8, pool);
+			reader.setChunkSize(7);
+			reader.setOrdered(ordered);
+			reader.readln();
+			assertTrue(0<reader.getPending());
+			reader.close();
+			assertEquals(0, reader.getPending());
+		}
+		assertTrue(pool.awaitQuiescence(10, TimeUnit.SECONDS));
+		pool.shutdown();
+	}
+
+	@Test public void tempty()throws IOException{
+		File file=MappedCSVReaderTest.file("", StandardCharsets.UTF_8);
+		assertEquals(0, parallel(file, 10, true).size());
+	}
+
+	/** Sorted string representations of the records */
+	static List<String> strings(List<Object[]> records){
+		List<String> strings=new ArrayList<String>();
+		for(Object[] record : records)
+			strings.add(Arrays.toString(record));
+		Collections.sort(strings);
+		return strings;
+	}
+}
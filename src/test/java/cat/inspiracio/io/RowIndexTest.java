@@ -0,0 +1,101 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class RowIndexTest {
+
+	/** Rows with multi-line delimited fields and non-ASCII characters. */
+	static String csv(int rows){
+		StringBuilder csv=new StringBuilder();
+		for(int i=0; i<rows; i++){
+			csv.append(i).append(',');
+			if(i%3==0)
+				csv.append("\"multi\nline, \"\"\u20ac\"\"\"");
+			else
+				csv.append("Gr\u00fc\u00dfe");
+			csv.append(i%5==0 ? "\r\n" : "\n");
+		}
+		return csv.toString();
+	}
+
+	@Test public void tseek()throws IOException{
+		File file=MappedCSVReaderTest.file(csv(1000), StandardCharsets.UTF_8);
+		RowIndex index=RowIndex.build(new MappedCSVReader(file), 64);
+		assertEquals(1000, index.getRows());
+		assertEquals(file.length(), index.getLength());
+		MappedCSVReader reader=new MappedCSVReader(file);
+		for(int row : new int[]{0, 1, 63, 64, 65, 500, 999, 3, 998}){
+			index.seek(reader, row);
+			Object[] record=reader.readln();
+			assertEquals(row, record[0]);
+			assertEquals(row%3==0 ? "multi\nline, \"\u20ac\"" : "Gr\u00fc\u00dfe", record[1]);
+		}
+		index.seek(reader, 1000);
+		assertNull(reader.readln());
+		reader.close();
+	}
+
+	@Test public void tsidecar()throws IOException{
+		File file=MappedCSVReaderTest.file(csv(100), StandardCharsets.UTF_8);
+		File sidecar=File.createTempFile("csv", ".rows");
+		sidecar.deleteOnExit();
+		RowIndex.build(new MappedCSVReader(file), 7).write(sidecar);
+		RowIndex index=RowIndex.read(sidecar);
+		assertEquals(100, index.getRows());
+		assertEquals(7, index.getInterval());
+		MappedCSVReader reader=new MappedCSVReader(file);
+		for(int row=99; 0<=row; row--){
+			index.seek(reader, row);
+			assertEquals(row, reader.readln()[0]);
+		}
+		reader.close();
+	}
+
+	@Test public void tintervals()throws IOException{
+		for(int rows=0; rows<10; rows++){
+			File file=MappedCSVReaderTest.file(csv(rows), StandardCharsets.UTF_8);
+			for(int interval=1; interval<5; interval++){
+				RowIndex index=RowIndex.build(new MappedCSVReader(file), interval);
+				assertEquals(rows, index.getRows());
+				MappedCSVReader reader=new MappedCSVReader(file);
+				for(int row=0; row<rows; row++){
+					index.seek(reader, row);
+					assertArrayEquals(new Object[]{row, row%3==0 ? "multi\nline, \"\u20ac\"" : "Gr\u00fc\u00dfe"}, reader.readln());
+				}
+				reader.close();
+			}
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void tstale()throws IOException{
+		File file=MappedCSVReaderTest.file(csv(10), StandardCharsets.UTF_8);
+		RowIndex index=RowIndex.build(new MappedCSVReader(file), 4);
+		File shorter=MappedCSVReaderTest.file(csv(5), StandardCharsets.UTF_8);
+		index.seek(new MappedCSVReader(shorter), 1);
+	}
+}
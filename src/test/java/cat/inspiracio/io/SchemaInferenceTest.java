@@ -0,0 +1,133 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static cat.inspiracio.io.ColumnType.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class SchemaInferenceTest{
+
+	private static CSVReader reader(String csv){
+		return new CSVReader(new StringReader(csv));
+	}
+
+	@Test public void tfirst()throws IOException{
+		SchemaInference inference=new SchemaInference();
+		ColumnType[] types=inference.infer(reader("1,1,a,true,null,1\n3000000000,2.5,b,FALSE,,2\n"));
+		assertArrayEquals(new ColumnType[]{LONG, DOUBLE, STRING, BOOLEAN, STRING, INT}, types);
+		assertFalse(inference.isNullable(0));
+		assertTrue(inference.isNullable(4));
+		assertEquals(2, inference.getSampled());
+	}
+
+	@Test public void twiden()throws IOException{
+		ColumnType[] types=new SchemaInference().infer(reader("1,1,1\n2,,x\n3,1.5,2\n"));
+		assertArrayEquals(new ColumnType[]{INT, DOUBLE, STRING}, types);
+	}
+
+	/** Only the sample counts */
+	@Test public void tsampleSize()throws IOException{
+		SchemaInference inference=new SchemaInference();
+		inference.setSampleSize(2);
+		assertArrayEquals(new ColumnType[]{INT}, inference.infer(reader("1\n2\nx\n")));
+	}
+
+	@Test public void tragged()throws IOException{
+		SchemaInference inference=new SchemaInference();
+		assertArrayEquals(new ColumnType[]{INT, INT}, inference.infer(reader("1\n2,3\n4\n")));
+		assertFalse(inference.isNullable(0));
+		assertTrue(inference.isNullable(1));
+	}
+
+	@Test public void theader()throws IOException{
+		CSVReader reader=reader("id,price\n1,2.5\n");
+		reader.setHeader(true);
+		assertArrayEquals(new ColumnType[]{INT, DOUBLE}, new SchemaInference().infer(reader));
+	}
+
+	/** The random sample finds a type that is not among the first records. */
+	@Test public void treservoir()throws IOException{
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<10000; i++)
+			builder.append(i).append(",\"a\nb\",").append(i<5000 ? "1" : "3000000000").append('\n');
+		String csv=builder.toString();
+
+		SchemaInference first=new SchemaInference();
+		first.setSampleSize(100);
+		assertArrayEquals(new ColumnType[]{INT, STRING, INT}, first.infer(reader(csv)));
+
+		SchemaInference random=new SchemaInference();
+		random.setSampleSize(100);
+		random.setReservoir(true);
+		random.setSeed(1);
+		assertArrayEquals(new ColumnType[]{INT, STRING, LONG}, random.infer(reader(csv)));
+		assertEquals(100, random.getSampled());
+	}
+
+	/** Fewer records than the sample */
+	@Test public void treservoirSmall()throws IOException{
+		SchemaInference inference=new SchemaInference();
+		inference.setReservoir(true);
+		assertArrayEquals(new ColumnType[]{INT, STRING}, inference.infer(reader("1,a\n2,b")));
+		assertEquals(2, inference.getSampled());
+		assertArrayEquals(new ColumnType[0], inference.infer(reader("")));
+	}
+
+	/** The inferred schema reads the records */
+	@Test public void tschema()throws IOException{
+		String csv="1,2.5,x\n2,,y\n";
+		CSVReader reader=reader(csv);
+		reader.setSchema(new SchemaInference().infer(reader(csv)));
+		reader.setStrict(true);
+		CSVRecord record=reader.next();
+		assertEquals(1, record.getInt(0));
+		assertEquals(2.5, record.getDouble(1), 0);
+		record=reader.next();
+		assertTrue(record.isNull(1));
+	}
+
+	/** With projection, the types are by column index in the file,
+	 * and they read the records of a projecting reader. */
+	@Test public void tprojection()throws IOException{
+		String csv="a,1,2.5,true\nb,2,3,false\n";
+		for(boolean reservoir : new boolean[]{false, true}){
+			CSVReader sample=reader(csv);
+			sample.setColumns(3, 1);
+			SchemaInference inference=new SchemaInference();
+			inference.setReservoir(reservoir);
+			ColumnType[] schema=inference.infer(sample);
+			assertArrayEquals(new ColumnType[]{SKIP, INT, SKIP, BOOLEAN}, schema);
+			assertFalse(inference.isNullable(1));
+
+			CSVReader reader=reader(csv);
+			reader.setColumns(3, 1);
+			reader.setSchema(schema);
+			reader.setStrict(true);
+			CSVRecord record=reader.next();
+			assertEquals(1, record.getInt(1));
+			assertTrue(record.getBoolean(3));
+			record=reader.next();
+			assertEquals(2, record.getInt(1));
+			assertFalse(record.getBoolean(3));
+		}
+	}
+}
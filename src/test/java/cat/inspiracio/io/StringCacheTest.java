@@ -0,0 +1,100 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.cat
+
+    This file is part of csv.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package cat.inspiracio.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class StringCacheTest{
+
+	private static String get(StringCache cache, String s){
+		char[] chars=("[" + s + "]").toCharArray();
+		return cache.get(chars, 1, s.length());
+	}
+
+	@Test public void thits(){
+		StringCache cache=new StringCache(8);
+		String a=get(cache, "ES");
+		String b=get(cache, "FR");
+		assertSame(a, get(cache, "ES"));
+		assertSame(b, get(cache, "FR"));
+		assertEquals("", get(cache, ""));
+		assertEquals(3, cache.size());
+		assertEquals(2, cache.getHits());
+		assertEquals(3, cache.getMisses());
+	}
+
+	/** Same hash code, different values */
+	@Test public void tcollision(){
+		StringCache cache=new StringCache(8);
+		String aa=get(cache, "Aa");
+		String bb=get(cache, "BB");
+		assertEquals("Aa", aa);
+		assertEquals("BB", bb);
+		assertSame(aa, get(cache, "Aa"));
+		assertSame(bb, get(cache, "BB"));
+	}
+
+	/** A full cache with many hits is emptied and keeps caching. */
+	@Test public void tevict(){
+		StringCache cache=new StringCache(4);
+		for(int round=0; round<10; round++)
+			for(int i=0; i<4; i++)
+				get(cache, "v" + i);
+		get(cache, "new");
+		assertEquals(1, cache.getEvictions());
+		assertFalse(cache.isBypassed());
+		assertEquals(1, cache.size());
+		String s=get(cache, "v0");
+		assertSame(s, get(cache, "v0"));
+	}
+
+	/** A full cache with few hits stops caching. */
+	@Test public void tbypass(){
+		StringCache cache=new StringCache(4);
+		for(int i=0; i<100; i++)
+			assertEquals("v" + i, get(cache, "v" + i));
+		assertTrue(cache.isBypassed());
+		assertEquals(0, cache.size());
+		assertEquals(100, cache.getMisses());
+		assertEquals("v0", get(cache, "v0"));
+	}
+
+	/** Low-cardinality column cached, high-cardinality column bypassed */
+	@Test public void treader()throws IOException{
+		StringBuilder builder=new StringBuilder();
+		for(int i=0; i<10000; i++)
+			builder.append("id").append(i).append(',').append(i%3==0 ? "EUR" : "USD").append('\n');
+		CSVReader reader=new CSVReader(new StringReader(builder.toString()));
+		reader.setDeduplicate(16);
+		Object[] first=reader.readln();
+		Object[] record=first;
+		for(int i=1; i<10000; i++)
+			record=reader.readln();
+		assertSame(first[1], record[1]);
+		StringCache ids=reader.getCache(0);
+		StringCache currencies=reader.getCache(1);
+		assertTrue(ids.isBypassed());
+		assertEquals(2, currencies.size());
+		assertEquals(9998, currencies.getHits());
+		assertNull(reader.getCache(2));
+	}
+}